@@ -0,0 +1,64 @@
+package org.ita23.pacman;
+
+import java.util.Random;
+
+import org.ita23.pacman.game.InputEvent.JoystickState;
+
+/**
+ * Runs a batch of headless games with a random input-policy and prints the
+ * aggregated results, mostly to measure throughput.
+ * Usage: {@code BatchMain [games] [max_frames] [workers] [frames|tiles]}
+ * With {@code tiles}, the games skip the frames in which nothing is decided.
+ */
+public class BatchMain {
+
+  /** How many frames the random policy holds a direction */
+  private static final int HOLD_FRAMES = 30;
+
+  public static void main(String[] args) {
+    int games = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+    int max_frames = args.length > 1 ? Integer.parseInt(args[1]) : 60 * 60 * 5;
+    int workers = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+    boolean tile_step = args.length > 3 && args[3].equals("tiles");
+
+    long[] seeds = new long[games];
+    for (int i = 0; i < games; i++) {
+      seeds[i] = i;
+    }
+    long start = System.nanoTime();
+    BatchResult result = new BatchRunner(workers, max_frames, tile_step).run(seeds, randomPolicy());
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.println(result);
+    System.out.println(String.format("%s, %d workers, %.2fs, %.0f games/s, %.0f frames/s",
+        tile_step ? "tiles" : "frames", workers, seconds, result.getGames() / seconds, result.getFramesSurvived() / seconds));
+  }
+
+  /**
+   * Creates policies which hold a random direction for {@code HOLD_FRAMES} frames,
+   * seeded with the seed of the game.
+   */
+  static InputPolicy.Factory randomPolicy() {
+    return new InputPolicy.Factory() {
+      @Override
+      public InputPolicy create(long seed) {
+        final Random random = new Random(seed);
+        final JoystickState[] directions = {
+            JoystickState.UP, JoystickState.DOWN, JoystickState.LEFT, JoystickState.RIGHT
+        };
+        return new InputPolicy() {
+          private JoystickState current = JoystickState.NEUTRAL;
+          private int next_change = 0;
+
+          @Override
+          public JoystickState nextInput(GameSession session, int frame) {
+            if (frame >= next_change) {
+              current = directions[random.nextInt(directions.length)];
+              next_change = frame + HOLD_FRAMES;
+            }
+            return current;
+          }
+        };
+      }
+    };
+  }
+}
@@ -0,0 +1,89 @@
+package org.ita23.pacman;
+
+/**
+ * Aggregated outcome of many simulated games.
+ * Results are collected per worker and merged at the end, so no per-game
+ * results have to be kept around.
+ */
+public class BatchResult {
+
+  private long games;
+  private long games_over;
+  private long total_score;
+  private int min_score = Integer.MAX_VALUE;
+  private int max_score = Integer.MIN_VALUE;
+  private long lives_lost;
+  private long rounds_won;
+  private long frames_survived;
+
+  void add(GameResult result) {
+    games++;
+    if (result.game_over) {
+      games_over++;
+    }
+    total_score += result.score;
+    min_score = Math.min(min_score, result.score);
+    max_score = Math.max(max_score, result.score);
+    lives_lost += result.lives_lost;
+    rounds_won += result.rounds_won;
+    frames_survived += result.frames_survived;
+  }
+
+  void merge(BatchResult other) {
+    games += other.games;
+    games_over += other.games_over;
+    total_score += other.total_score;
+    min_score = Math.min(min_score, other.min_score);
+    max_score = Math.max(max_score, other.max_score);
+    lives_lost += other.lives_lost;
+    rounds_won += other.rounds_won;
+    frames_survived += other.frames_survived;
+  }
+
+  public long getGames() {
+    return games;
+  }
+
+  /** The number of games which ended because pacman lost all lives */
+  public long getGamesOver() {
+    return games_over;
+  }
+
+  public long getTotalScore() {
+    return total_score;
+  }
+
+  public double getMeanScore() {
+    return games == 0 ? 0 : (double) total_score / games;
+  }
+
+  public int getMinScore() {
+    return games == 0 ? 0 : min_score;
+  }
+
+  public int getMaxScore() {
+    return games == 0 ? 0 : max_score;
+  }
+
+  public long getLivesLost() {
+    return lives_lost;
+  }
+
+  public long getRoundsWon() {
+    return rounds_won;
+  }
+
+  public long getFramesSurvived() {
+    return frames_survived;
+  }
+
+  @Override
+  public String toString() {
+    return "games=" + games
+        + " games_over=" + games_over
+        + " score(mean/min/max)=" + String.format("%.1f", getMeanScore()) + "/" + getMinScore() + "/" + getMaxScore()
+        + " lives_lost=" + lives_lost
+        + " rounds_won=" + rounds_won
+        + " frames_survived=" + frames_survived;
+  }
+}
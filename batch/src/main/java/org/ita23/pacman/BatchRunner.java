@@ -0,0 +1,131 @@
+package org.ita23.pacman;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.ita23.pacman.game.GameLoop;
+import org.ita23.pacman.logic.StateListener;
+
+/**
+ * Runs many independent, headless games in parallel on a fixed pool of workers.
+ * Each worker plays a contiguous slice of the seeds one game after another and
+ * aggregates the results locally, so workers never share any state until their
+ * slices are merged at the very end.
+ */
+public class BatchRunner {
+
+  /** The (unused) size of the game-field. Nothing is rendered in a batch */
+  private static final int FIELD_WIDTH = 460;
+  private static final int FIELD_HEIGHT = 580;
+  /** Slices per worker, so a slow slice doesn't leave the other workers idle */
+  private static final int SLICES_PER_WORKER = 4;
+
+  private final int workers;
+  private final int max_frames;
+  /** Whether to advance the games chunk by chunk, instead of frame by frame */
+  private final boolean tile_step;
+
+  /**
+   * @param workers the number of games to simulate in parallel.
+   * @param max_frames the frame-limit for a single game, if pacman survives that long.
+   */
+  public BatchRunner(int workers, int max_frames) {
+    this(workers, max_frames, false);
+  }
+
+  /**
+   * @param workers the number of games to simulate in parallel.
+   * @param max_frames the frame-limit for a single game, if pacman survives that long.
+   * @param tile_step whether to skip the frames in which nothing is decided, see
+   *     {@link GameLoop#simulateTile}. The policies are then only asked for the frames
+   *     which are actually simulated, and their input is held until the next one.
+   */
+  public BatchRunner(int workers, int max_frames, boolean tile_step) {
+    if (workers < 1) {
+      throw new IllegalArgumentException("Need at least one worker");
+    }
+    this.workers = workers;
+    this.max_frames = max_frames;
+    this.tile_step = tile_step;
+  }
+
+  /**
+   * Uses one worker per available processor.
+   */
+  public BatchRunner(int max_frames) {
+    this(Runtime.getRuntime().availableProcessors(), max_frames);
+  }
+
+  /**
+   * Plays one game per seed and aggregates the outcome.
+   * @param seeds the seeds of the games to play.
+   * @param policies creates the input-policy for every game.
+   */
+  public BatchResult run(final long[] seeds, final InputPolicy.Factory policies) {
+    ExecutorService pool = Executors.newFixedThreadPool(workers);
+    try {
+      int slices = Math.min(seeds.length, workers * SLICES_PER_WORKER);
+      List<Future<BatchResult>> results = new ArrayList<>(slices);
+      for (int i = 0; i < slices; i++) {
+        final int from = (int) ((long) seeds.length * i / slices);
+        final int to = (int) ((long) seeds.length * (i + 1) / slices);
+        results.add(pool.submit(() -> {
+          BatchResult slice = new BatchResult();
+          for (int s = from; s < to; s++) {
+            slice.add(play(seeds[s], policies.create(seeds[s])));
+          }
+          return slice;
+        }));
+      }
+      BatchResult total = new BatchResult();
+      for (Future<BatchResult> result : results) {
+        total.merge(result.get());
+      }
+      return total;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for the batch", e);
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("A simulated game failed", e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Plays a single headless game until it's over or the frame-limit is hit.
+   */
+  public GameResult play(long seed, InputPolicy policy) {
+    GameSession session = Bootstrap.bootstrap(FIELD_WIDTH, FIELD_HEIGHT, seed);
+    final int[] counters = new int[3]; // lives lost, rounds won, game over
+    session.getState().addStateListener(new StateListener() {
+      @Override
+      public void stateChanged(States state) {
+        if (state == States.ROUND_WON) {
+          counters[1]++;
+        } else {
+          counters[0]++;
+          if (state == States.GAME_OVER) {
+            counters[2] = 1;
+          }
+        }
+      }
+    });
+    GameLoop loop = session.getLoop();
+    loop.lock();
+    int frame = 0;
+    while (frame < max_frames && counters[2] == 0) {
+      if (tile_step) {
+        frame += loop.simulateTile(policy.nextInput(session, frame), max_frames - frame);
+      } else {
+        loop.simulate(policy.nextInput(session, frame));
+        frame++;
+      }
+    }
+    return new GameResult(seed, session.getState().getScore(), counters[0], counters[1], frame, counters[2] == 1);
+  }
+}
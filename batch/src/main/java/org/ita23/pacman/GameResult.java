@@ -0,0 +1,25 @@
+package org.ita23.pacman;
+
+/**
+ * The outcome of a single simulated game.
+ */
+public class GameResult {
+
+  public final long seed;
+  public final int score;
+  public final int lives_lost;
+  public final int rounds_won;
+  /** The frames simulated until the game was over (or the frame-limit was hit) */
+  public final int frames_survived;
+  /** Whether the game ended because pacman lost all lives */
+  public final boolean game_over;
+
+  public GameResult(long seed, int score, int lives_lost, int rounds_won, int frames_survived, boolean game_over) {
+    this.seed = seed;
+    this.score = score;
+    this.lives_lost = lives_lost;
+    this.rounds_won = rounds_won;
+    this.frames_survived = frames_survived;
+    this.game_over = game_over;
+  }
+}
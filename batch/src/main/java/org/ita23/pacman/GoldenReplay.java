@@ -0,0 +1,343 @@
+package org.ita23.pacman;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.ita23.pacman.game.GameLoop;
+import org.ita23.pacman.game.InputPlayer;
+import org.ita23.pacman.game.InputRecorder;
+import org.ita23.pacman.logic.StateListener;
+
+/**
+ * Checks that the recorded games of a corpus still play out exactly the same, e.g. after
+ * a refactoring which must not change any behaviour.
+ * Every recording ({@code *.pmr}) in the corpus has a golden trace next to it
+ * ({@code *.golden}), holding the hashes of all components of the game after every frame.
+ * Verifying replays all recordings in parallel and reports the first frame in which a
+ * game diverged from it's trace, and which components differ. Every recording is replayed
+ * three times: frame by frame, tile by tile (see {@code GameLoop.simulateTile()}) and
+ * starting from every keyframe, which restores the snapshot taken while recording.
+ * Usage:
+ * <ul>
+ *   <li>{@code GoldenReplay record <dir> [games] [max_frames] [random|lookahead]} plays
+ *       new games with the given policy (random by default) and adds them to the corpus,
+ *       with their traces. Every game is paused for a while, as if the window lost the
+ *       focus.</li>
+ *   <li>{@code GoldenReplay update <dir>} writes the traces of all recordings, e.g. for
+ *       recordings of real games or after an intended change of behaviour.</li>
+ *   <li>{@code GoldenReplay verify <dir>} checks all recordings against their traces and
+ *       exits with {@code 1} if any of them diverged.</li>
+ * </ul>
+ */
+public class GoldenReplay {
+
+  /** The (unused) size of the game-field. Nothing is rendered */
+  private static final int FIELD_WIDTH = 460;
+  private static final int FIELD_HEIGHT = 580;
+  private static final String RECORDING = ".pmr";
+  private static final String TRACE = ".golden";
+  /** The seconds of game-time between two keyframes of new recordings */
+  private static final int KEYFRAME_SECONDS = 10;
+  /** Marks the report of a recording that passed */
+  private static final String PASSED = "OK";
+  /** The frame recorded games are paused at, if they're running then */
+  private static final int PAUSE_FRAME = 5 * GameLoop.FRAMES_PER_SECOND;
+  /** The frames recorded games stay paused */
+  private static final int PAUSE_FRAMES = GameLoop.FRAMES_PER_SECOND;
+
+  public static void main(String[] args) throws Exception {
+    if (args.length < 2) {
+      usage();
+    }
+    File corpus = new File(args[1]);
+    List<Callable<String>> tasks = new ArrayList<>();
+    switch (args[0]) {
+      case "record": {
+        int games = args.length > 2 ? Integer.parseInt(args[2]) : 16;
+        int max_frames = args.length > 3 ? Integer.parseInt(args[3]) : 60 * 60 * 2;
+        String policy = args.length > 4 ? args[4] : "random";
+        InputPolicy.Factory policies;
+        if (policy.equals("random")) {
+          policies = BatchMain.randomPolicy();
+        } else if (policy.equals("lookahead")) {
+          policies = LookaheadPolicy.factory();
+        } else {
+          usage();
+          return;
+        }
+        if (!corpus.isDirectory() && !corpus.mkdirs()) {
+          throw new IOException("Can't create the corpus " + corpus);
+        }
+        for (int i = 0; i < games; i++) {
+          final long seed = i;
+          File recording = new File(corpus, policy + "-" + seed + RECORDING);
+          tasks.add(() -> record(recording, seed, max_frames, policies.create(seed)));
+        }
+        break;
+      }
+      case "update":
+        for (final File recording : listRecordings(corpus)) {
+          tasks.add(() -> update(recording));
+        }
+        break;
+      case "verify":
+        for (final File recording : listRecordings(corpus)) {
+          tasks.add(() -> verify(recording));
+        }
+        break;
+      default:
+        usage();
+    }
+    long start = System.nanoTime();
+    int failed = runAll(tasks);
+    double seconds = (System.nanoTime() - start) / 1e9;
+    System.out.println(String.format("%d recordings, %d failed, %.2fs", tasks.size(), failed, seconds));
+    System.exit(failed == 0 ? 0 : 1);
+  }
+
+  private static void usage() {
+    System.err.println("Usage: GoldenReplay record <dir> [games] [max_frames] [random|lookahead]");
+    System.err.println("       GoldenReplay update <dir>");
+    System.err.println("       GoldenReplay verify <dir>");
+    System.exit(2);
+  }
+
+  private static File[] listRecordings(File corpus) throws IOException {
+    File[] recordings = corpus.listFiles((dir, name) -> name.endsWith(RECORDING));
+    if (recordings == null) {
+      throw new IOException("Not a directory: " + corpus);
+    }
+    Arrays.sort(recordings);
+    return recordings;
+  }
+
+  /**
+   * Runs the tasks on one worker per available processor and prints their reports in
+   * the order of the tasks.
+   * @return the number of tasks which didn't pass.
+   */
+  private static int runAll(List<Callable<String>> tasks) {
+    ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    try {
+      List<Future<String>> reports = pool.invokeAll(tasks);
+      int failed = 0;
+      for (Future<String> report : reports) {
+        String line;
+        try {
+          line = report.get();
+        } catch (ExecutionException e) {
+          line = "ERROR " + e.getCause();
+        }
+        if (!line.startsWith(PASSED)) {
+          failed++;
+        }
+        System.out.println(line);
+      }
+      return failed;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException("Interrupted while waiting for the corpus", e);
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Plays a new game with the given policy into the given recording, and writes it's trace.
+   */
+  private static String record(File recording, long seed, int max_frames, InputPolicy policy)
+      throws IOException {
+    GameSession session = Bootstrap.bootstrap(FIELD_WIDTH, FIELD_HEIGHT, seed);
+    final boolean[] over = new boolean[1];
+    session.getState().addStateListener(new StateListener() {
+      @Override
+      public void stateChanged(States state) {
+        over[0] |= state == States.GAME_OVER;
+      }
+    });
+    GameLoop loop = session.getLoop();
+    InputRecorder recorder = new InputRecorder(loop.getSeed(), session, KEYFRAME_SECONDS);
+    loop.setInputRecorder(recorder);
+    loop.lock();
+    int paused_at = -1;
+    for (int frame = 0; frame < max_frames && !over[0]; frame++) {
+      if (paused_at < 0 && frame >= PAUSE_FRAME && !loop.isFrozen() && !loop.isPaused()) {
+        loop.pause();
+        paused_at = frame;
+      } else if (paused_at >= 0 && frame == paused_at + PAUSE_FRAMES) {
+        loop.play();
+      }
+      loop.simulate(policy.nextInput(session, frame));
+    }
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(recording))) {
+      recorder.writeTo(out);
+    }
+    return update(recording);
+  }
+
+  /**
+   * Replays the recording and writes it's trace.
+   */
+  private static String update(File recording) throws IOException {
+    InputPlayer player = readRecording(recording);
+    GameSession session = replaySession(player);
+    GoldenTrace trace = new GoldenTrace();
+    while (player.hasNext()) {
+      player.simulate(session.getLoop());
+      trace.add(session);
+    }
+    try (OutputStream out = new BufferedOutputStream(new FileOutputStream(traceOf(recording)))) {
+      trace.writeTo(out);
+    }
+    return PASSED + " " + recording.getName() + ": traced " + trace.getFrameCount() + " frames";
+  }
+
+  /**
+   * Replays the recording in all ways and compares every frame to it's trace.
+   */
+  private static String verify(File recording) throws IOException {
+    File golden = traceOf(recording);
+    if (!golden.isFile()) {
+      return "MISSING " + recording.getName() + ": no trace, run 'update' first";
+    }
+    GoldenTrace trace;
+    try (InputStream in = new BufferedInputStream(new FileInputStream(golden))) {
+      trace = GoldenTrace.read(in);
+    }
+    InputPlayer player = readRecording(recording);
+    String diverged = verifyFrames(player, trace);
+    if (diverged == null) {
+      diverged = verifyTiles(readRecording(recording), trace);
+    }
+    if (diverged == null) {
+      diverged = verifyKeyframes(readRecording(recording), trace);
+    }
+    if (diverged != null) {
+      return "DIVERGED " + recording.getName() + ": " + diverged;
+    }
+    return PASSED + " " + recording.getName() + ": " + player.getFrameCount() + " frames, "
+        + player.getKeyframeCount() + " keyframes";
+  }
+
+  /**
+   * Replays the recording frame by frame.
+   * @return where the game diverged from the trace, or {@code null} if it didn't.
+   */
+  private static String verifyFrames(InputPlayer player, GoldenTrace trace) {
+    String length = compareLength(player, trace);
+    if (length != null) {
+      return length;
+    }
+    GameSession session = replaySession(player);
+    int[] scratch = new int[GoldenTrace.COMPONENTS.length];
+    while (player.hasNext()) {
+      int frame = player.getFrame();
+      player.simulate(session.getLoop());
+      String diff = compare(trace, frame, session, scratch, "");
+      if (diff != null) {
+        return diff;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Replays the recording tile by tile, only comparing the frames which weren't skipped.
+   * @return where the game diverged from the trace, or {@code null} if it didn't.
+   */
+  private static String verifyTiles(InputPlayer player, GoldenTrace trace) {
+    GameSession session = replaySession(player);
+    int[] scratch = new int[GoldenTrace.COMPONENTS.length];
+    while (player.hasNext()) {
+      player.simulateTile(session.getLoop());
+      String diff = compare(trace, player.getFrame() - 1, session, scratch, " when stepping tiles");
+      if (diff != null) {
+        return diff;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Seeks to every keyframe, last one first, and replays the frames up to the next one.
+   * @return where the game diverged from the trace, or {@code null} if it didn't.
+   */
+  private static String verifyKeyframes(InputPlayer player, GoldenTrace trace) {
+    GameSession session = replaySession(player);
+    int[] scratch = new int[GoldenTrace.COMPONENTS.length];
+    for (int keyframe = player.getKeyframeCount() - 1; keyframe >= 0; keyframe--) {
+      int start = player.getKeyframeFrame(keyframe);
+      int end = keyframe + 1 < player.getKeyframeCount()
+          ? player.getKeyframeFrame(keyframe + 1) : player.getFrameCount();
+      String after = " after seeking to the keyframe of frame " + start;
+      player.seek(start, session.getLoop(), session);
+      // The keyframe holds the state after the frame before it:
+      String diff = start == 0 ? null : compare(trace, start - 1, session, scratch, after);
+      while (diff == null && player.getFrame() < end) {
+        int frame = player.getFrame();
+        player.simulate(session.getLoop());
+        diff = compare(trace, frame, session, scratch, after);
+      }
+      if (diff != null) {
+        return diff;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @return why the recording and the trace don't fit, or {@code null} if they have the
+   *     same number of frames.
+   */
+  private static String compareLength(InputPlayer player, GoldenTrace trace) {
+    if (player.getFrameCount() == trace.getFrameCount()) {
+      return null;
+    }
+    return "recording has " + player.getFrameCount() + " frames, trace has " + trace.getFrameCount();
+  }
+
+  /**
+   * @return where the game diverged from the trace, or {@code null} if it didn't.
+   */
+  private static String compare(GoldenTrace trace, int frame, GameSession session, int[] scratch, String how) {
+    int diff = trace.compare(frame, session, scratch);
+    if (diff == 0) {
+      return null;
+    }
+    return "at frame " + frame + " in " + GoldenTrace.describe(diff) + how;
+  }
+
+  /**
+   * Sets up a new game to play back the recording on.
+   */
+  private static GameSession replaySession(InputPlayer player) {
+    GameSession session = Bootstrap.bootstrap(FIELD_WIDTH, FIELD_HEIGHT, player.getSeed());
+    session.getLoop().lock();
+    return session;
+  }
+
+  private static InputPlayer readRecording(File recording) throws IOException {
+    try (InputStream in = new BufferedInputStream(new FileInputStream(recording))) {
+      return InputPlayer.read(in);
+    }
+  }
+
+  private static File traceOf(File recording) {
+    String name = recording.getName();
+    return new File(recording.getParentFile(), name.substring(0, name.length() - RECORDING.length()) + TRACE);
+  }
+}
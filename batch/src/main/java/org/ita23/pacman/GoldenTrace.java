@@ -0,0 +1,177 @@
+package org.ita23.pacman;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.ita23.pacman.figures.Cage;
+
+/**
+ * The hash of every component of a game after every frame, to find out exactly where
+ * and in which components a replay diverges from an earlier run of the same recording.
+ * Only the lower 32 bits of every hash are kept. Since a diverged game very rarely
+ * converges again, missing a single frame to a collision doesn't matter. In the written
+ * trace, a component is only repeated when it changed since the frame before, and the
+ * whole trace is gzip-compressed.
+ */
+public class GoldenTrace {
+
+  /** The names of all components, in the order they're hashed */
+  static final String[] COMPONENTS = {
+      "map", "state", "pacman", "blinky", "pinky", "inky", "clyde", "cage mode"
+  };
+  /** The index of the first ghost in {@code COMPONENTS}, the others follow it */
+  private static final int FIRST_GHOST = 3;
+  /** The index of the mode of the cage in {@code COMPONENTS} */
+  private static final int CAGE_MODE = 7;
+
+  /** The first four bytes of every trace, "PMGT" */
+  private static final int MAGIC = 0x504D4754;
+  private static final int VERSION = 1;
+
+  /** The hashes of all components, frame after frame */
+  private int[] hashes;
+  private int frames;
+
+  public GoldenTrace() {
+    hashes = new int[COMPONENTS.length * 1024];
+  }
+
+  private GoldenTrace(int[] hashes, int frames) {
+    this.hashes = hashes;
+    this.frames = frames;
+  }
+
+  /**
+   * Appends the current state of the given game, after a frame was simulated.
+   */
+  public void add(GameSession session) {
+    if (hashes.length < (frames + 1) * COMPONENTS.length) {
+      hashes = Arrays.copyOf(hashes, hashes.length * 2);
+    }
+    hash(session, hashes, frames * COMPONENTS.length);
+    frames++;
+  }
+
+  public int getFrameCount() {
+    return frames;
+  }
+
+  /**
+   * Compares the current state of the given game to the state traced for a frame.
+   * @param frame the frame that was just simulated, starting at 0.
+   * @param scratch space for the hashes of the game, at least as long as {@code COMPONENTS}.
+   * @return one bit for every component that differs (by it's index in {@code COMPONENTS}),
+   *     {@code 0} if the game is in the traced state.
+   */
+  public int compare(int frame, GameSession session, int[] scratch) {
+    if (frame < 0 || frame >= frames) {
+      throw new IllegalArgumentException("No frame " + frame + ", trace has " + frames + " frames");
+    }
+    hash(session, scratch, 0);
+    int diff = 0;
+    for (int i = 0; i < COMPONENTS.length; i++) {
+      if (scratch[i] != hashes[frame * COMPONENTS.length + i]) {
+        diff |= 1 << i;
+      }
+    }
+    return diff;
+  }
+
+  /**
+   * Lists the names of the components in the given result of {@code compare()}.
+   */
+  public static String describe(int diff) {
+    StringBuilder names = new StringBuilder();
+    for (int i = 0; i < COMPONENTS.length; i++) {
+      if ((diff & (1 << i)) != 0) {
+        if (names.length() > 0) {
+          names.append(", ");
+        }
+        names.append(COMPONENTS[i]);
+      }
+    }
+    return names.toString();
+  }
+
+  private static void hash(GameSession session, int[] out, int offset) {
+    out[offset] = (int) session.getMap().getStateHash();
+    out[offset + 1] = (int) session.getState().getStateHash();
+    out[offset + 2] = (int) session.getPacman().getStateHash();
+    Cage cage = session.getCage();
+    for (int i = FIRST_GHOST; i < CAGE_MODE; i++) {
+      out[offset + i] = (int) cage.getGhostHash(COMPONENTS[i]);
+    }
+    out[offset + CAGE_MODE] = (int) cage.getModeHash();
+  }
+
+  /**
+   * Writes the trace to the given stream, which is not closed.
+   */
+  public void writeTo(OutputStream out) throws IOException {
+    GZIPOutputStream zip = new GZIPOutputStream(out);
+    DataOutputStream data = new DataOutputStream(new BufferedOutputStream(zip));
+    data.writeInt(MAGIC);
+    data.writeShort(VERSION);
+    data.writeByte(COMPONENTS.length);
+    data.writeInt(frames);
+    for (int frame = 0; frame < frames; frame++) {
+      int base = frame * COMPONENTS.length;
+      int changed = 0;
+      for (int i = 0; i < COMPONENTS.length; i++) {
+        if (frame == 0 || hashes[base + i] != hashes[base - COMPONENTS.length + i]) {
+          changed |= 1 << i;
+        }
+      }
+      data.writeByte(changed);
+      for (int i = 0; i < COMPONENTS.length; i++) {
+        if ((changed & (1 << i)) != 0) {
+          data.writeInt(hashes[base + i]);
+        }
+      }
+    }
+    data.flush();
+    zip.finish();
+  }
+
+  /**
+   * Reads a trace, as written by {@code writeTo()}.
+   * @throws IOException if reading failed or the stream holds no (supported) trace.
+   */
+  public static GoldenTrace read(InputStream in) throws IOException {
+    DataInputStream data = new DataInputStream(new BufferedInputStream(new GZIPInputStream(in)));
+    if (data.readInt() != MAGIC) {
+      throw new IOException("Not a golden trace");
+    }
+    int version = data.readShort();
+    if (version != VERSION || data.readByte() != COMPONENTS.length) {
+      throw new IOException("Unsupported version of golden trace: " + version);
+    }
+    int frames = data.readInt();
+    if (frames < 0 || frames > Integer.MAX_VALUE / COMPONENTS.length) {
+      throw new IOException("Corrupt golden trace: " + frames + " frames");
+    }
+    int[] hashes = new int[Math.max(frames, 1) * COMPONENTS.length];
+    for (int frame = 0; frame < frames; frame++) {
+      int base = frame * COMPONENTS.length;
+      int changed = data.readUnsignedByte();
+      for (int i = 0; i < COMPONENTS.length; i++) {
+        if ((changed & (1 << i)) != 0) {
+          hashes[base + i] = data.readInt();
+        } else if (frame > 0) {
+          hashes[base + i] = hashes[base - COMPONENTS.length + i];
+        } else {
+          throw new IOException("Corrupt golden trace: first frame is incomplete");
+        }
+      }
+    }
+    return new GoldenTrace(hashes, frames);
+  }
+}
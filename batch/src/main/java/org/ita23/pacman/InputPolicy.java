@@ -0,0 +1,30 @@
+package org.ita23.pacman;
+
+import org.ita23.pacman.game.InputEvent.JoystickState;
+
+/**
+ * Decides which input to give to a simulated game on every frame, e.g. an AI
+ * playing the game.
+ * Every game gets it's own policy-instance, so implementations may keep state.
+ */
+public interface InputPolicy {
+
+  /**
+   * Creates the policies for the individual games of a batch.
+   */
+  public interface Factory {
+    /**
+     * Create the policy for a single game.
+     * @param seed the seed of the game, to make any randomness reproducible.
+     */
+    public InputPolicy create(long seed);
+  }
+
+  /**
+   * Decide which input to give for the next frame.
+   * @param session the game that is played.
+   * @param frame the number of the frame about to be simulated, starting at 0. When the
+   *     batch skips frames, not every number is passed.
+   */
+  public JoystickState nextInput(GameSession session, int frame);
+}
@@ -0,0 +1,104 @@
+package org.ita23.pacman;
+
+import org.ita23.pacman.figures.Pacman;
+import org.ita23.pacman.game.CollusionTest;
+import org.ita23.pacman.game.GameLoop;
+import org.ita23.pacman.game.InputEvent.JoystickState;
+import org.ita23.pacman.logic.ChunkedMap;
+import org.ita23.pacman.logic.GameState;
+
+/**
+ * Plays well enough to win rounds, by trying out every direction on a fork of the game
+ * and taking the one that turned out best.
+ * Every {@code HOLD_FRAMES} frames, each direction is held on it's own fork for
+ * {@code LOOKAHEAD_FRAMES} frames. Losing a live is worst, then more score is better and
+ * finally being closer to the nearest food (by the way through the maze), so Pacman
+ * also finds the last pellets of a round. It's deterministic, the seed is not used.
+ */
+public class LookaheadPolicy implements InputPolicy {
+
+  /** How many frames a chosen direction is held */
+  private static final int HOLD_FRAMES = 8;
+  /** How many frames every direction is tried out */
+  private static final int LOOKAHEAD_FRAMES = 48;
+  private static final JoystickState[] DIRECTIONS = {
+      JoystickState.UP, JoystickState.DOWN, JoystickState.LEFT, JoystickState.RIGHT
+  };
+  /** The size of the maze in chunks */
+  private static final int WIDTH = 28;
+  private static final int HEIGHT = 31;
+
+  private JoystickState current = JoystickState.NEUTRAL;
+  private int next_change = 0;
+
+  /**
+   * Creates a new policy for every game.
+   */
+  public static InputPolicy.Factory factory() {
+    return new InputPolicy.Factory() {
+      @Override
+      public InputPolicy create(long seed) {
+        return new LookaheadPolicy();
+      }
+    };
+  }
+
+  @Override
+  public JoystickState nextInput(GameSession session, int frame) {
+    if (frame < next_change) {
+      return current;
+    }
+    long best = Long.MIN_VALUE;
+    for (JoystickState direction : DIRECTIONS) {
+      long value = tryOut(session, direction);
+      if (value > best) {
+        best = value;
+        current = direction;
+      }
+    }
+    next_change = frame + HOLD_FRAMES;
+    return current;
+  }
+
+  /**
+   * Holds the direction on a fork of the game and rates the outcome, higher is better.
+   */
+  private static long tryOut(GameSession session, JoystickState direction) {
+    GameSession fork = session.fork();
+    GameState state = fork.getState();
+    int lives = state.getLivesLeft();
+    int score = state.getScore();
+    GameLoop loop = fork.getLoop();
+    for (int frame = 0; frame < LOOKAHEAD_FRAMES && state.getLivesLeft() == lives; ) {
+      frame += loop.simulateTile(direction, LOOKAHEAD_FRAMES - frame);
+    }
+    long lost = lives - state.getLivesLeft();
+    return -lost * 1000000000L + (state.getScore() - score) * 1000L - distanceToFood(fork);
+  }
+
+  /**
+   * Get the length of the way from Pacman to the nearest food, {@code 0} if none is left.
+   */
+  private static int distanceToFood(GameSession session) {
+    ChunkedMap map = session.getMap();
+    CollusionTest test = map.getCollusionTest();
+    Pacman pacman = session.getPacman();
+    int from_x = pacman.getX() / ChunkedMap.Chunk.CHUNK_SIZE;
+    int from_y = (pacman.getY() - GameState.MAP_SPACER) / ChunkedMap.Chunk.CHUNK_SIZE;
+    int nearest = 0;
+    for (int y = 0; y < HEIGHT; y++) {
+      for (int x = 0; x < WIDTH; x++) {
+        int code = test.getObjectCode(x * ChunkedMap.Chunk.CHUNK_SIZE,
+            y * ChunkedMap.Chunk.CHUNK_SIZE + GameState.MAP_SPACER);
+        if (code != ChunkedMap.Chunk.POINT.ordinal() && code != ChunkedMap.Chunk.BALL.ordinal()) {
+          continue;
+        }
+        int distance = map.getMazeDistance(from_x, from_y, x, y);
+        if (distance >= 0 && (nearest == 0 || distance < nearest)) {
+          nearest = distance;
+        }
+      }
+    }
+    return nearest;
+  }
+}
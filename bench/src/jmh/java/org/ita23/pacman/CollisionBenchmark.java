@@ -0,0 +1,87 @@
+package org.ita23.pacman;
+
+import org.ita23.pacman.game.CollusionTest;
+import org.ita23.pacman.game.CollusionTest.NextDirection;
+import org.ita23.pacman.logic.ChunkedMap;
+import org.ita23.pacman.logic.ChunkedMap.Chunk;
+import org.ita23.pacman.logic.GameState;
+import org.ita23.pacman.logic.MazeGraph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the collision-queries of the {@code ChunkedMap}, as done by the
+ * figures once per chunk they walk.
+ * Every invocation queries the next walkable chunk of the maze, one after the
+ * other.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CollisionBenchmark {
+
+  private CollusionTest tester;
+  private int[] xs;
+  private int[] ys;
+  private int next;
+
+  @Setup
+  public void createMap() {
+    ChunkedMap map = Bootstrap.bootstrap(SeededInput.FIELD_WIDTH, SeededInput.FIELD_HEIGHT).getMap();
+    tester = map.getCollusionTest();
+    // Collect the pixel-positions of all walkable chunks:
+    MazeGraph maze = map.getMazeGraph();
+    xs = new int[maze.getWalkableCount()];
+    ys = new int[maze.getWalkableCount()];
+    int count = 0;
+    for (int y = 0; y < maze.getHeight(); y++) {
+      for (int x = 0; x < maze.getWidth(); x++) {
+        if (maze.isWalkable(x, y)) {
+          xs[count] = x * Chunk.CHUNK_SIZE;
+          ys[count] = y * Chunk.CHUNK_SIZE + GameState.MAP_SPACER;
+          count++;
+        }
+      }
+    }
+  }
+
+  private int nextChunk() {
+    next = (next + 1) % xs.length;
+    return next;
+  }
+
+  @Benchmark
+  public int objectCode() {
+    int i = nextChunk();
+    return tester.getObjectCode(xs[i], ys[i]);
+  }
+
+  @Benchmark
+  public int openExits() {
+    int i = nextChunk();
+    return tester.getOpenExits(xs[i], ys[i]) | tester.getDoorExits(xs[i], ys[i]) << 4;
+  }
+
+  /**
+   * The same question as {@code openExits()}, asked through the generic API.
+   */
+  @Benchmark
+  public int nextCollusion() {
+    int i = nextChunk();
+    int exits = 0;
+    for (NextDirection direction : NextDirection.values()) {
+      if (!tester.checkNextCollusion(xs[i], ys[i], Chunk.BLOCK, direction)
+          && !tester.checkNextCollusion(xs[i], ys[i], Chunk.CAGE_DOOR, direction)) {
+        exits |= direction.getMask();
+      }
+    }
+    return exits;
+  }
+}
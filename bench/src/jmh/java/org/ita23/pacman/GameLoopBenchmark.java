@@ -0,0 +1,58 @@
+package org.ita23.pacman;
+
+import org.ita23.pacman.game.GameLoop;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a whole frame of the game, end-to-end.
+ * Every iteration starts a new game, which is then played with the same seeded
+ * input, so the game-states measured are the same on every run.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GameLoopBenchmark {
+
+  @Param({"42"})
+  public long seed;
+
+  private SeededInput input;
+  private GameLoop loop;
+  private NoOpCanvas canvas;
+
+  @Setup(Level.Iteration)
+  public void startGame() {
+    input = new SeededInput(seed, 60 * GameLoop.FRAMES_PER_SECOND);
+    loop = input.startGame(0).getLoop();
+    canvas = new NoOpCanvas();
+  }
+
+  /**
+   * A frame of the game without rendering, as run by the batch simulation.
+   */
+  @Benchmark
+  public GameLoop simulate() {
+    loop.simulate(input.next());
+    return loop;
+  }
+
+  /**
+   * A frame of the game including all render-events, drawn to a canvas that
+   * does nothing.
+   */
+  @Benchmark
+  public int step() {
+    loop.step(input.next(), canvas);
+    return canvas.getCalls();
+  }
+}
@@ -0,0 +1,80 @@
+package org.ita23.pacman;
+
+import org.ita23.pacman.game.Canvas;
+import org.ita23.pacman.game.Color;
+import org.ita23.pacman.game.Font;
+import org.ita23.pacman.res.ImageResource;
+
+/**
+ * A canvas that doesn't draw anything, to measure the cost of the render-events
+ * without the cost of a real graphics backend.
+ * It counts the draw-calls, so benchmarks can return them and the JIT can't
+ * throw the rendering away.
+ */
+public class NoOpCanvas implements Canvas {
+
+  private float stroke_width = 1;
+  private int calls;
+
+  /**
+   * The amount of draw-calls made on this canvas so far.
+   */
+  public int getCalls() {
+    return calls;
+  }
+
+  @Override
+  public void setColor(Color color) {
+    calls++;
+  }
+
+  @Override
+  public void setFont(Font font) {
+    calls++;
+  }
+
+  @Override
+  public void drawString(String text, int x, int y) {
+    calls++;
+  }
+
+  @Override
+  public void drawImage(ImageResource resource, int x, int y) {
+    calls++;
+  }
+
+  @Override
+  public void drawImage(ImageResource resource, int x, int y, int width, int height) {
+    calls++;
+  }
+
+  @Override
+  public void fillOval(int x, int y, int width, int height) {
+    calls++;
+  }
+
+  @Override
+  public void fillArc(int x, int y, int width, int height, int startAngle, int arcAngle) {
+    calls++;
+  }
+
+  @Override
+  public void drawRect(int x, int y, int width, int height) {
+    calls++;
+  }
+
+  @Override
+  public void fillRect(int x, int y, int width, int height) {
+    calls++;
+  }
+
+  @Override
+  public void setStrokeWidth(float width) {
+    stroke_width = width;
+  }
+
+  @Override
+  public float getStrokeWidth() {
+    return stroke_width;
+  }
+}
@@ -0,0 +1,42 @@
+package org.ita23.pacman;
+
+import org.ita23.pacman.logic.ChunkedMap;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures rendering the maze (including all food on it) to a canvas that does
+ * nothing.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RenderBenchmark {
+
+  @Param({"42"})
+  public long seed;
+
+  private ChunkedMap map;
+  private NoOpCanvas canvas;
+
+  @Setup
+  public void startGame() {
+    // Play for a while, so some of the food is eaten:
+    map = new SeededInput(seed, 3600).startGame(1200).getMap();
+    canvas = new NoOpCanvas();
+  }
+
+  @Benchmark
+  public int renderMap() {
+    map.render(canvas);
+    return canvas.getCalls();
+  }
+}
@@ -0,0 +1,68 @@
+package org.ita23.pacman;
+
+import org.ita23.pacman.game.InputEvent.JoystickState;
+
+import java.util.Random;
+
+/**
+ * A reproducible sequence of joystick inputs, so every benchmark-run plays the
+ * same game.
+ * The sequence holds a direction for a random amount of frames, like a player
+ * would, and repeats once all frames are used.
+ */
+public class SeededInput {
+
+  /** The width of the game-field used by all benchmarks */
+  public static final int FIELD_WIDTH = 460;
+  /** The height of the game-field used by all benchmarks */
+  public static final int FIELD_HEIGHT = 580;
+
+  private final long seed;
+  private final JoystickState[] inputs;
+  private int frame;
+
+  /**
+   * Creates a new input sequence.
+   * @param seed the seed to generate the sequence from.
+   * @param frames the length of the sequence, before it repeats.
+   */
+  public SeededInput(long seed, int frames) {
+    this.seed = seed;
+    Random random = new Random(seed);
+    JoystickState[] directions = {
+        JoystickState.UP, JoystickState.DOWN, JoystickState.LEFT, JoystickState.RIGHT
+    };
+    inputs = new JoystickState[frames];
+    int i = 0;
+    while (i < frames) {
+      JoystickState direction = directions[random.nextInt(directions.length)];
+      int hold = 8 + random.nextInt(40);
+      for (int j = 0; j < hold && i < frames; j++) {
+        inputs[i++] = direction;
+      }
+    }
+  }
+
+  /**
+   * The input for the next frame.
+   */
+  public JoystickState next() {
+    JoystickState input = inputs[frame];
+    frame = (frame + 1) % inputs.length;
+    return input;
+  }
+
+  /**
+   * Creates a new game, seeded with the same seed as the input, and plays it for
+   * the given amount of frames, e.g. so the ghosts are out of their cage.
+   * @param frames the frames to simulate before returning the game.
+   */
+  public GameSession startGame(int frames) {
+    GameSession session = Bootstrap.bootstrap(FIELD_WIDTH, FIELD_HEIGHT, seed);
+    session.getLoop().lock();
+    for (int i = 0; i < frames; i++) {
+      session.getLoop().simulate(next());
+    }
+    return session;
+  }
+}
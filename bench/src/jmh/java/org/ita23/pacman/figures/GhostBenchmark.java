@@ -0,0 +1,53 @@
+package org.ita23.pacman.figures;
+
+import org.ita23.pacman.GameSession;
+import org.ita23.pacman.SeededInput;
+import org.ita23.pacman.game.CollusionTest;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the AI of a single ghost, e.g. one frame of {@code detectCollusion()}
+ * followed by {@code move()}.
+ * The game is played with seeded input until all ghosts left the cage. After
+ * that, only the measured ghost moves while the rest of the game stands still.
+ * This lives in the package of the ghosts, because they are not public.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class GhostBenchmark {
+
+  @Param({"blinky", "pinky", "inky", "clyde"})
+  public String ghost_name;
+
+  @Param({"42"})
+  public long seed;
+
+  private Ghost ghost;
+  private CollusionTest tester;
+
+  @Setup(Level.Iteration)
+  public void startGame() {
+    // All ghosts are released after about 15 seconds:
+    GameSession session = new SeededInput(seed, 3600).startGame(1200);
+    ghost = session.getCage().getGhost(ghost_name);
+    tester = session.getMap().getCollusionTest();
+  }
+
+  @Benchmark
+  public Ghost detectAndMove() {
+    ghost.detectCollusion(tester);
+    ghost.move();
+    return ghost;
+  }
+}
@@ -1,10 +1,16 @@
 package org.ita23.pacman;
 
-import org.ita23.pacman.game.GameLoop;
-import org.ita23.pacman.game.SoundManager;
 import org.ita23.pacman.game.InputEvent.JoystickState;
+import org.ita23.pacman.game.InputPlayer;
+import org.ita23.pacman.game.EventProfiler;
+import org.ita23.pacman.game.FrameTimings;
+import org.ita23.pacman.game.GameLoop;
+import org.ita23.pacman.game.InputRecorder;
+import org.ita23.pacman.game.PerformanceOverlay;
+import org.ita23.pacman.game.TimeHistogram;
 import org.ita23.pacman.res.SoundResource;
 
+import javax.management.JMException;
 import javax.swing.*;
 
 import java.awt.Graphics;
@@ -13,6 +19,17 @@ import java.awt.event.KeyEvent;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.image.BufferStrategy;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.Executors;
@@ -21,14 +38,50 @@ import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 
 /**
- * The main entry-point for the Pacman game.
+ * The main entry-point for the Pacman game.</p>
+ * Start with {@code -Dpacman.record=<file>} to record the game into the given
+ *  file when the window is closed, or with {@code -Dpacman.replay=<file>} to play
+ *  a recorded game back. Add {@code -Dpacman.seek=<frame>} to start the playback
+ *  at the given frame. The playback never pauses the game itself, the pauses
+ *  are played back as they were recorded. Losing the focus only holds the
+ *  playback until the window gets it back.</p>
+ * With {@code -Dpacman.timings}, the time Swing takes to present the frames is
+ *  measured as well as the phases of every frame. With
+ *  {@code -Dpacman.profile=<n>}, every event is measured in every n-th frame.
+ *  The measurements are printed when pressing F9 and when the window is closed,
+ *  along with the frames which took longer than {@code -Dpacman.watchdog=<ms>}
+ *  (three frames by default, {@code 0} to not watch the frames).</p>
+ * The game is emitted to flight recordings, see {@code FlightEvents}. The last
+ *  seconds of the game are written to a file in {@code -Dpacman.history=<dir>}
+ *  (the working directory by default) when the game crashes or F10 is pressed,
+ *  see {@code FrameHistory}. The game can be watched and paused over JMX (a replay
+ *  can only be watched), see {@code SessionMonitor}.</p>
+ * F3 shows and hides the {@code PerformanceOverlay}, start with
+ *  {@code -Dpacman.overlay} to show it right away.
  * @author Lukas Knuth
  * @version 1.0
  */
 public class DesktopMain {
 
+    /** The seconds of game-time between two keyframes of a recording */
+    private static final int KEYFRAME_SECONDS = 10;
+    /** Measure the events in one of this many frames, if not given */
+    private static final int PROFILE_INTERVAL = 16;
+    /** The number of events listed when printing the measurements */
+    private static final int PROFILE_REPORT_SIZE = 15;
+    /** The milliseconds a frame may take before the watchdog reports it, if not given */
+    private static final long WATCHDOG_BUDGET = 3 * 16;
+    /** The number of stalled frames the watchdog keeps */
+    private static final int WATCHDOG_CAPACITY = 16;
+    /** The seconds of the game which are kept, to write them out after a crash */
+    private static final int HISTORY_SECONDS = 10;
+
     /** The window everything takes place on. */
     private JFrame f;
+    /** The game played in the window */
+    private GameSession session;
+    /** The images, colors and fonts used to draw every frame */
+    private SpriteCache sprites;
     /** Prevent game-start when intro is playing */
     private boolean first_launch;
 
@@ -39,6 +92,27 @@ public class DesktopMain {
     private ScheduledExecutorService game_loop_executor;
     /** The handler fot the main-game-thread, used to stop it */
     private ScheduledFuture game_loop_handler;
+
+    /** Records the users input, if a file to record to was given */
+    private InputRecorder recorder;
+    /** Plays back a recorded game instead of the users input, if a file was given */
+    private InputPlayer player;
+    /** Holds the playback while the window is not focused, set from the EDT */
+    private volatile boolean playback_held;
+    /** Measures the phases of every frame */
+    private FrameTimings timings;
+    /** Measures the time spent in Swing for every frame, if enabled */
+    private TimeHistogram swing_timings;
+    /** Measures the individual events in sampled frames, if enabled */
+    private EventProfiler profiler;
+    /** Captures what the game-loop is doing when a frame stalls, if enabled */
+    private FrameWatchdog watchdog;
+    /** Keeps the last frames of the game */
+    private FrameHistory history;
+    /** Exposes the game over JMX */
+    private SessionMonitor monitor;
+    /** Draws the performance on top of the game, if shown */
+    private PerformanceOverlay overlay;
     
     /**
      * Construct the main-aspects of the game.
@@ -46,19 +120,21 @@ public class DesktopMain {
     private DesktopMain(){
         first_launch = true;
         populateWindow();
-        Bootstrap.bootstrap(f.getWidth(), f.getHeight());
+        setupSession();
         // Start the game:
         startLoop();
-        // Pause to play the intro:
-        GameLoop.INSTANCE.pause();
-        SoundManager.INSTANCE.play(SoundResource.INTRO);
-        new Timer().schedule(new TimerTask() {
-            @Override
-            public void run() {
-                GameLoop.INSTANCE.play();
-                first_launch = false;
-            }
-        }, 4000);
+        // Pause to play the intro, a replay has the pause recorded:
+        if (player == null){
+            session.getLoop().pause();
+            session.getSoundManager().play(SoundResource.INTRO);
+            new Timer().schedule(new TimerTask() {
+                @Override
+                public void run() {
+                    session.getLoop().play();
+                    first_launch = false;
+                }
+            }, 4000);
+        }
     }
 
     /**
@@ -68,28 +144,61 @@ public class DesktopMain {
     private Runnable game_loop = new Runnable() {
         @Override
         public void run() {
+            if (playback_held) {
+                // Keep the last frame on screen, without touching the game:
+                return;
+            }
             try {
+                if (watchdog != null) {
+                    watchdog.frameStarted();
+                }
+                long start = System.nanoTime();
                 BufferStrategy double_buffer = f.getBufferStrategy();
                 Graphics off_screen_buffer = double_buffer.getDrawGraphics();
                 // Clip the buffer at the top because otherwise we're drawing _under_ the window decoration
                 Graphics clipped =  off_screen_buffer.create(0, 20, f.getWidth(), f.getHeight() - 20);
                 // Run the loop and render to the off-screen buffer
-                GameLoop.INSTANCE.step(last_input_state, new SwingCanvas(clipped));
+                long step_start = System.nanoTime();
+                boolean stepped = true;
+                if (player == null) {
+                    session.getLoop().step(last_input_state, new SwingCanvas(clipped, sprites));
+                } else if (player.hasNext()) {
+                    player.step(session.getLoop(), new SwingCanvas(clipped, sprites));
+                } else {
+                    stepped = false;
+                }
+                long step_end = System.nanoTime();
                 // Finalize the buffers for GC - can not draw to it anymore
                 clipped.dispose();
                 off_screen_buffer.dispose();
                 // Make the off-screen buffer visible on-screen
                 double_buffer.show();
-            } catch (Exception e) {
+                long end = System.nanoTime();
+                if (swing_timings != null) {
+                    swing_timings.record(end - step_end + step_start - start);
+                }
+                if (stepped) {
+                    history.record(end - start);
+                }
+                if (watchdog != null) {
+                    watchdog.frameEnded();
+                }
+            } catch (Throwable e) {
                 e.printStackTrace();
+                saveHistory(e);
                 System.exit(1);
             }
         }
     };
 
     private void startLoop() {
-        SoundManager.INSTANCE.setGramophone(new SwingGramophone());
-        GameLoop.INSTANCE.lock();
+        session.getLoop().lock();
+        // Seek before there is a gramophone, the skipped frames shouldn't be heard:
+        String seek = System.getProperty("pacman.seek");
+        if (player != null && seek != null){
+            player.seek(Integer.parseInt(seek), session.getLoop(), session);
+        }
+        session.getSoundManager().setGramophone(new SwingGramophone());
         game_loop_executor = Executors.newSingleThreadScheduledExecutor();
         game_loop_handler = game_loop_executor.scheduleAtFixedRate(
                 game_loop, 0L, 16L, TimeUnit.MILLISECONDS
@@ -99,6 +208,133 @@ public class DesktopMain {
     public void stopLoop(){
         game_loop_handler.cancel(true);
         game_loop_executor.shutdown();
+        if (watchdog != null) {
+            watchdog.stop();
+        }
+        monitor.unregister();
+    }
+
+    /**
+     * Sets up the game, either to play back a recording or to be played (and
+     *  optionally recorded).
+     */
+    private void setupSession(){
+        String replay = System.getProperty("pacman.replay");
+        if (replay != null){
+            try (InputStream in = new FileInputStream(replay)) {
+                player = InputPlayer.read(in);
+            } catch (IOException e) {
+                e.printStackTrace();
+                System.exit(1);
+            }
+            session = Bootstrap.bootstrap(f.getWidth(), f.getHeight(), player.getSeed());
+        } else {
+            session = Bootstrap.bootstrap(f.getWidth(), f.getHeight());
+            if (System.getProperty("pacman.record") != null){
+                recorder = new InputRecorder(session.getLoop().getSeed(), session, KEYFRAME_SECONDS);
+                session.getLoop().setInputRecorder(recorder);
+            }
+        }
+        // Always measure the frames, so they can be flight recorded:
+        timings = FlightEvents.createFrameTimings();
+        session.getLoop().setFrameTimings(timings);
+        FlightEvents.install(session);
+        monitor = new SessionMonitor(session, timings, player != null);
+        try {
+            monitor.register();
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+        if (System.getProperty("pacman.timings") != null){
+            swing_timings = new TimeHistogram();
+        }
+        history = new FrameHistory(session, HISTORY_SECONDS * GameLoop.FRAMES_PER_SECOND);
+        long budget = Long.getLong("pacman.watchdog", WATCHDOG_BUDGET);
+        if (budget > 0){
+            watchdog = new FrameWatchdog(budget, WATCHDOG_CAPACITY, timings);
+            watchdog.start();
+        }
+        overlay = new PerformanceOverlay(session.getLoop(),
+                f.getWidth() - PerformanceOverlay.WIDTH - 16, 0, createAllocationCounter());
+        session.getLoop().addRenderEvent(overlay, PerformanceOverlay.Z_INDEX);
+        overlay.setVisible(System.getProperty("pacman.overlay") != null);
+        String profile = System.getProperty("pacman.profile");
+        if (profile != null){
+            profiler = new EventProfiler(profile.isEmpty() ? PROFILE_INTERVAL : Integer.parseInt(profile));
+            session.getLoop().setEventProfiler(profiler);
+        }
+    }
+
+    /**
+     * Counts the bytes allocated by the game-loop, if the JVM can.
+     * @return the counter, or {@code null} if the JVM doesn't count them.
+     */
+    private static PerformanceOverlay.AllocationCounter createAllocationCounter(){
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!(threads instanceof com.sun.management.ThreadMXBean)) return null;
+        final com.sun.management.ThreadMXBean counting = (com.sun.management.ThreadMXBean) threads;
+        if (!counting.isThreadAllocatedMemorySupported() || !counting.isThreadAllocatedMemoryEnabled()) return null;
+        return new PerformanceOverlay.AllocationCounter() {
+            @Override
+            public long getAllocatedBytes() {
+                return counting.getCurrentThreadAllocatedBytes();
+            }
+        };
+    }
+
+    /**
+     * Prints all measurements which are enabled.
+     */
+    private void printMeasurements(){
+        if (swing_timings != null){
+            System.out.print(timings);
+            System.out.println("swing: "+swing_timings);
+        }
+        if (profiler != null){
+            System.out.print(profiler.getReport(PROFILE_REPORT_SIZE));
+        }
+        if (watchdog != null && watchdog.getStallCount() > 0){
+            System.out.print(watchdog.dump());
+        }
+    }
+
+    /**
+     * Writes the last frames of the game into a new file.
+     * @param cause the exception which crashed the game, or {@code null} if
+     *  the frames were asked for.
+     */
+    private void saveHistory(Throwable cause){
+        StringWriter dump = new StringWriter();
+        if (cause != null){
+            dump.write("# Crashed with:\n");
+            cause.printStackTrace(new PrintWriter(dump));
+        }
+        dump.write(history.dump());
+        File file = new File(System.getProperty("pacman.history", "."),
+                "pacman-history-"+System.currentTimeMillis()+".txt");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(dump.toString().getBytes(StandardCharsets.UTF_8));
+            System.err.println("Wrote the last frames to "+file.getAbsolutePath());
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Writes the recorded game to the file it should be recorded to. The
+     *  game-loop must be stopped before.
+     */
+    private void saveRecording(){
+        if (recorder == null) return;
+        try (OutputStream out = new FileOutputStream(System.getProperty("pacman.record"))) {
+            // Wait for the last frame, so it's not recorded while writing:
+            game_loop_executor.awaitTermination(1, TimeUnit.SECONDS);
+            recorder.writeTo(out);
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     /**
@@ -111,6 +347,8 @@ public class DesktopMain {
             public void windowClosing(WindowEvent e) {
                 // Terminate the Game-loop:
                 stopLoop();
+                saveRecording();
+                printMeasurements();
                 // Close the application:
                 System.exit(0);
             }
@@ -118,15 +356,23 @@ public class DesktopMain {
         f.addWindowFocusListener(new WindowAdapter() {
             @Override
             public void windowGainedFocus(WindowEvent e) {
-                if (!first_launch){
-                    GameLoop.INSTANCE.play();
-                    SoundManager.INSTANCE.unpauseAll();
+                if (player != null){
+                    // The game-loop owns the replayed game, only hold the playback:
+                    playback_held = false;
+                    session.getSoundManager().unpauseAll();
+                } else if (!first_launch){
+                    session.getLoop().play();
+                    session.getSoundManager().unpauseAll();
                 }
             }
             @Override
             public void windowLostFocus(WindowEvent e) {
-                GameLoop.INSTANCE.pause();
-                SoundManager.INSTANCE.pauseAll();
+                if (player != null){
+                    playback_held = true;
+                } else {
+                    session.getLoop().pause();
+                }
+                session.getSoundManager().pauseAll();
             }
         });
         f.addKeyListener(new KeyAdapter() {
@@ -149,6 +395,15 @@ public class DesktopMain {
                 case KeyEvent.VK_D:
                     last_input_state = JoystickState.RIGHT;
                     break;
+                case KeyEvent.VK_F3:
+                    overlay.toggle();
+                    break;
+                case KeyEvent.VK_F9:
+                    printMeasurements();
+                    break;
+                case KeyEvent.VK_F10:
+                    saveHistory(null);
+                    break;
             }
           }
         });
@@ -161,6 +416,7 @@ public class DesktopMain {
         // Setup for rendering the game
         f.setIgnoreRepaint(true);
         f.createBufferStrategy(2);
+        sprites = new SpriteCache(f.getGraphicsConfiguration());
     }
 
     /**
@@ -0,0 +1,157 @@
+package org.ita23.pacman;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+import org.ita23.pacman.figures.ModeListener;
+import org.ita23.pacman.game.FrameTimings;
+import org.ita23.pacman.logic.FoodListener;
+import org.ita23.pacman.logic.GameState;
+import org.ita23.pacman.logic.StateListener;
+
+/**
+ * Emits the frames and the events of a game as JDK Flight Recorder events, so frame-time
+ * spikes can be correlated with GC, safepoints and what happened in the game, all in one
+ * recording.
+ * All events are disabled by default. Enable them in the settings of a recording (all are
+ * in the "Pacman" category), e.g. a recording started with {@code -XX:StartFlightRecording}.
+ * While disabled, emitting an event costs a single check. The events are recorded without
+ * a stack trace, they all happen on the game-loop.
+ */
+public class FlightEvents {
+
+  @Name("org.ita23.pacman.Frame")
+  @Label("Frame")
+  @Category({"Pacman", "Engine"})
+  @Description("The durations of the phases of a single frame")
+  @StackTrace(false)
+  @Enabled(false)
+  static class FrameEvent extends Event {
+    @Label("Input") @Timespan
+    long input;
+    @Label("Collusion") @Timespan
+    long collusion;
+    @Label("Movement") @Timespan
+    long movement;
+    @Label("Render") @Timespan
+    long render;
+    @Label("Frame") @Timespan
+    long frame;
+  }
+
+  @Name("org.ita23.pacman.ModeChange")
+  @Label("Ghost Mode Change")
+  @Category({"Pacman", "Game"})
+  @StackTrace(false)
+  @Enabled(false)
+  static class ModeChangeEvent extends Event {
+    @Label("Mode")
+    String mode;
+  }
+
+  @Name("org.ita23.pacman.StateChange")
+  @Label("Game State Change")
+  @Category({"Pacman", "Game"})
+  @Description("A round won, a life lost or the game over")
+  @StackTrace(false)
+  @Enabled(false)
+  static class StateChangeEvent extends Event {
+    @Label("State")
+    String state;
+    @Label("Score")
+    int score;
+    @Label("Lives Left")
+    int lives;
+  }
+
+  @Name("org.ita23.pacman.FoodEaten")
+  @Label("Food Eaten")
+  @Category({"Pacman", "Game"})
+  @StackTrace(false)
+  @Enabled(false)
+  static class FoodEatenEvent extends Event {
+    @Label("Food")
+    String food;
+    @Label("Score")
+    int score;
+    @Label("Food Left")
+    int food_left;
+  }
+
+  /**
+   * Frame timings which emit a {@code FrameEvent} for every measured frame.
+   */
+  static class RecordedTimings extends FrameTimings {
+    @Override
+    protected void frameRecorded() {
+      FrameEvent event = new FrameEvent();
+      if (event.shouldCommit()) {
+        event.input = getLast(INPUT);
+        event.collusion = getLast(COLLUSION);
+        event.movement = getLast(MOVEMENT);
+        event.render = getLast(RENDER);
+        event.frame = getLast(FRAME);
+        event.commit();
+      }
+    }
+  }
+
+  private FlightEvents() {
+  }
+
+  /**
+   * Creates frame timings, which also emit every measured frame as an event. Set them on
+   * the game-loop instead of plain {@code FrameTimings}.
+   */
+  public static FrameTimings createFrameTimings() {
+    return new RecordedTimings();
+  }
+
+  /**
+   * Emits the mode changes of the ghosts, the changes of the game state and the eaten
+   * food of the given game as events.
+   */
+  public static void install(final GameSession session) {
+    final GameState state = session.getState();
+    session.getCage().addModeListener(new ModeListener() {
+      @Override
+      public void modeChanged(String mode) {
+        ModeChangeEvent event = new ModeChangeEvent();
+        if (event.shouldCommit()) {
+          event.mode = mode;
+          event.commit();
+        }
+      }
+    });
+    state.addStateListener(new StateListener() {
+      @Override
+      public void stateChanged(States new_state) {
+        StateChangeEvent event = new StateChangeEvent();
+        if (event.shouldCommit()) {
+          event.state = new_state.name();
+          event.score = state.getScore();
+          event.lives = state.getLivesLeft();
+          event.commit();
+        }
+      }
+    });
+    state.addFoodListener(new FoodListener() {
+      @Override
+      public void consumed(GameState.Food food) {
+        FoodEatenEvent event = new FoodEatenEvent();
+        if (event.shouldCommit()) {
+          event.food = food.name();
+          event.score = state.getScore();
+          event.food_left = session.getMap().getFoodLeft();
+          event.commit();
+        }
+      }
+    });
+  }
+}
@@ -0,0 +1,213 @@
+package org.ita23.pacman;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.ita23.pacman.game.FrameTimings;
+
+/**
+ * Notices frames which take longer than a budget, and captures what the game-thread was
+ * doing while it was stuck.
+ * The game-thread marks the start and end of every frame. A separate thread checks on it
+ * regularly: once a frame exceeds the budget, it takes the stack of the game-thread, and
+ * again after every further budget, up to {@code MAX_SAMPLES} times. When the stalled
+ * frame is done, it's total duration and the durations of it's phases are added.
+ * The last stalls are kept in a ring-buffer, older ones are dropped.
+ */
+public class FrameWatchdog {
+
+  /** The maximum number of stacks taken during a single stall */
+  private static final int MAX_SAMPLES = 4;
+
+  private final long budget_nanos;
+  /** The timings measuring the frames, to get the phases of a stalled frame */
+  private final FrameTimings timings;
+  /** The last stalls, {@code next_stall} is the oldest once it's full */
+  private final Stall[] stalls;
+  private int next_stall;
+  private long stall_count;
+  /** Checks on the game-thread, if started */
+  private ScheduledExecutorService checker;
+
+  /** The thread running the frames, set by the first frame */
+  private volatile Thread game_thread;
+  /** When the current frame started, {@code 0} between frames */
+  private volatile long frame_start;
+  /** The number of started frames */
+  private volatile long frame;
+  /** The stall of the current frame, {@code null} if it's not stalled (yet) */
+  private Stall current;
+
+  /**
+   * @param budget_millis the milliseconds a frame may take, before it's considered stalled.
+   * @param capacity the number of stalls to keep.
+   * @param timings the timings of the frames, or {@code null} if they're not measured.
+   */
+  public FrameWatchdog(long budget_millis, int capacity, FrameTimings timings) {
+    if (budget_millis <= 0 || capacity <= 0) {
+      throw new IllegalArgumentException("Budget and capacity must be positive");
+    }
+    this.budget_nanos = TimeUnit.MILLISECONDS.toNanos(budget_millis);
+    this.timings = timings;
+    this.stalls = new Stall[capacity];
+  }
+
+  /**
+   * Starts checking on the frames, on a daemon-thread.
+   */
+  public void start() {
+    checker = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "frame-watchdog");
+      thread.setDaemon(true);
+      return thread;
+    });
+    long period = Math.max(budget_nanos / 4, TimeUnit.MILLISECONDS.toNanos(1));
+    checker.scheduleAtFixedRate(this::check, period, period, TimeUnit.NANOSECONDS);
+  }
+
+  public void stop() {
+    if (checker != null) {
+      checker.shutdownNow();
+    }
+  }
+
+  /**
+   * Called by the game-thread, right before it starts a frame.
+   */
+  public void frameStarted() {
+    game_thread = Thread.currentThread();
+    frame++;
+    frame_start = System.nanoTime();
+  }
+
+  /**
+   * Called by the game-thread, right after a frame is done.
+   */
+  public void frameEnded() {
+    long duration = System.nanoTime() - frame_start;
+    frame_start = 0;
+    synchronized (this) {
+      if (current != null) {
+        current.duration = duration;
+        if (timings != null) {
+          for (int phase = 0; phase < current.phases.length; phase++) {
+            current.phases[phase] = timings.getLast(phase);
+          }
+        }
+        current = null;
+      }
+    }
+  }
+
+  /**
+   * Takes the stack of the game-thread, if the current frame exceeded the budget (again).
+   */
+  private void check() {
+    long start = frame_start;
+    if (start == 0) {
+      return;
+    }
+    long elapsed = System.nanoTime() - start;
+    synchronized (this) {
+      int samples = current == null ? 0 : current.samples.size();
+      if (elapsed < budget_nanos * (samples + 1) || samples >= MAX_SAMPLES) {
+        return;
+      }
+      StackTraceElement[] stack = game_thread.getStackTrace();
+      if (frame_start != start) {
+        return; // The frame ended in the meantime, the stack is from the next one
+      }
+      if (current == null) {
+        current = new Stall(frame, System.currentTimeMillis());
+        stalls[next_stall] = current;
+        next_stall = (next_stall + 1) % stalls.length;
+        stall_count++;
+      }
+      current.samples.add(new Sample(elapsed, stack));
+    }
+  }
+
+  /**
+   * Get the number of stalled frames so far, including the ones no longer kept.
+   */
+  public synchronized long getStallCount() {
+    return stall_count;
+  }
+
+  /**
+   * Describes all kept stalls, oldest first, with the stacks taken while stalled.
+   */
+  public synchronized String dump() {
+    StringBuilder dump = new StringBuilder();
+    dump.append(stall_count).append(" frames exceeded the budget of ")
+        .append(millis(budget_nanos)).append("ms\n");
+    for (int i = 0; i < stalls.length; i++) {
+      Stall stall = stalls[(next_stall + i) % stalls.length];
+      if (stall == null) {
+        continue;
+      }
+      dump.append("Frame ").append(stall.frame).append(" at ").append(Instant.ofEpochMilli(stall.when));
+      if (stall.duration < 0) {
+        dump.append(": still running\n");
+      } else {
+        dump.append(": ").append(millis(stall.duration)).append("ms");
+        if (timings != null) {
+          dump.append(" (");
+          for (int phase = 0; phase < FrameTimings.FRAME; phase++) {
+            dump.append(phase == 0 ? "" : ", ").append(FrameTimings.getName(phase))
+                .append(' ').append(millis(stall.phases[phase])).append("ms");
+          }
+          dump.append(')');
+        }
+        dump.append('\n');
+      }
+      for (Sample sample : stall.samples) {
+        dump.append("  after ").append(millis(sample.elapsed)).append("ms:\n");
+        for (StackTraceElement element : sample.stack) {
+          dump.append("    at ").append(element).append('\n');
+        }
+      }
+    }
+    return dump.toString();
+  }
+
+  private static String millis(long nanos) {
+    return String.format("%.1f", nanos / 1e6);
+  }
+
+  /**
+   * A single frame, which exceeded the budget.
+   */
+  private static class Stall {
+    private final long frame;
+    /** The wall-clock time the stall was noticed at */
+    private final long when;
+    private final List<Sample> samples = new ArrayList<>(MAX_SAMPLES);
+    /** The total duration of the frame, {@code -1} while it's running */
+    private long duration = -1;
+    /** The durations of the phases of the frame, indexed like in {@code FrameTimings} */
+    private final long[] phases = new long[FrameTimings.getPhaseCount()];
+
+    private Stall(long frame, long when) {
+      this.frame = frame;
+      this.when = when;
+    }
+  }
+
+  /**
+   * The stack of the game-thread, taken during a stall.
+   */
+  private static class Sample {
+    private final long elapsed;
+    private final StackTraceElement[] stack;
+
+    private Sample(long elapsed, StackTraceElement[] stack) {
+      this.elapsed = elapsed;
+      this.stack = stack;
+    }
+  }
+}
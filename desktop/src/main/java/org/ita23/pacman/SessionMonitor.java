@@ -0,0 +1,229 @@
+package org.ita23.pacman;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.ita23.pacman.figures.Cage;
+import org.ita23.pacman.game.FrameTimings;
+import org.ita23.pacman.game.GameLoop;
+import org.ita23.pacman.game.TimeHistogram;
+import org.ita23.pacman.logic.FoodListener;
+import org.ita23.pacman.logic.GameState;
+
+/**
+ * Exposes a running game as an MBean on the platform MBean-server, so it can be watched (and
+ * paused) with any JMX tooling, e.g. JConsole.
+ * Every game gets it's own MBean, named {@code org.ita23.pacman:type=GameSession,name=game-<n>}.
+ * The frame rates and times are taken from the {@code FrameTimings} of the loop. The rates
+ * are averaged over at least a second, no matter how often they're read.
+ * The game is read from the JMX-threads while it's running, without any locking. Values may
+ * be a frame apart from each other, which is fine for monitoring.
+ * A replayed game can only be watched: the recording decides when it's paused, so the
+ * operations which pause, freeze or play it are rejected.
+ */
+public class SessionMonitor implements SessionMonitorMBean {
+
+  /** The minimum time the frame rates are averaged over */
+  private static final long RATE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+  /** Numbers the monitored games, to give each one it's own name */
+  private static final AtomicInteger GAMES = new AtomicInteger();
+
+  private final GameSession session;
+  /** The timings measured by the loop, or {@code null} if the frames aren't measured */
+  private final FrameTimings timings;
+  private final ObjectName name;
+  /** If the game is played back from a recording, which must not be paused from outside */
+  private final boolean replay;
+  /** The food eaten so far, only written by the thread running the game */
+  private volatile long food_eaten;
+
+  /** When the frames were last counted for the rates */
+  private long sampled_at;
+  private long sampled_simulated;
+  private long sampled_rendered;
+  private double simulated_rate;
+  private double rendered_rate;
+
+  /**
+   * @param session the game to monitor.
+   * @param timings the timings set on the loop of the game, or {@code null} if the frames
+   * aren't measured (all frame rates and times are {@code 0} then).
+   * @param replay if the game is played back from a recording.
+   */
+  public SessionMonitor(GameSession session, FrameTimings timings, boolean replay) {
+    this.session = session;
+    this.timings = timings;
+    this.replay = replay;
+    try {
+      this.name = new ObjectName("org.ita23.pacman:type=GameSession,name=game-" + GAMES.incrementAndGet());
+    } catch (JMException e) {
+      throw new IllegalStateException(e);
+    }
+    session.getState().addFoodListener(new FoodListener() {
+      @Override
+      public void consumed(GameState.Food food) {
+        food_eaten++;
+      }
+    });
+    sampled_at = System.nanoTime();
+  }
+
+  /**
+   * Registers this monitor on the platform MBean-server.
+   * @throws JMException if it can't be registered.
+   */
+  public void register() throws JMException {
+    ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+  }
+
+  /**
+   * Removes this monitor from the platform MBean-server, if it's registered.
+   */
+  public void unregister() {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try {
+      if (server.isRegistered(name)) {
+        server.unregisterMBean(name);
+      }
+    } catch (JMException e) {
+      e.printStackTrace();
+    }
+  }
+
+  public ObjectName getName() {
+    return name;
+  }
+
+  @Override
+  public synchronized double getSimulatedFramesPerSecond() {
+    updateRates();
+    return simulated_rate;
+  }
+
+  @Override
+  public synchronized double getRenderedFramesPerSecond() {
+    updateRates();
+    return rendered_rate;
+  }
+
+  /**
+   * Counts the frames since the last sample, if it's long enough ago.
+   */
+  private void updateRates() {
+    long now = System.nanoTime();
+    long elapsed = now - sampled_at;
+    if (timings == null || elapsed < RATE_INTERVAL) {
+      return;
+    }
+    long simulated = timings.getHistogram(FrameTimings.FRAME).getCount();
+    long rendered = timings.getHistogram(FrameTimings.RENDER).getCount();
+    // The timings may have been reset in the meantime:
+    simulated_rate = Math.max(simulated - sampled_simulated, 0) * 1e9 / elapsed;
+    rendered_rate = Math.max(rendered - sampled_rendered, 0) * 1e9 / elapsed;
+    sampled_at = now;
+    sampled_simulated = simulated;
+    sampled_rendered = rendered;
+  }
+
+  @Override
+  public double getLastFrameMillis() {
+    return timings == null ? 0 : millis(timings.getLast(FrameTimings.FRAME));
+  }
+
+  @Override
+  public double getMeanFrameMillis() {
+    return timings == null ? 0 : millis(timings.getHistogram(FrameTimings.FRAME).getMean());
+  }
+
+  @Override
+  public double getP99FrameMillis() {
+    if (timings == null) {
+      return 0;
+    }
+    TimeHistogram frames = timings.getHistogram(FrameTimings.FRAME);
+    return millis(frames.getPercentile(99));
+  }
+
+  private static double millis(long nanos) {
+    return nanos / 1e6;
+  }
+
+  @Override
+  public String getGhostMode() {
+    return Cage.getModeName(session.getCage().getGlobalMode());
+  }
+
+  @Override
+  public int getScore() {
+    return session.getState().getScore();
+  }
+
+  @Override
+  public int getLivesLeft() {
+    return session.getState().getLivesLeft();
+  }
+
+  @Override
+  public long getFoodEaten() {
+    return food_eaten;
+  }
+
+  @Override
+  public int getPendingTasks() {
+    GameLoop loop = session.getLoop();
+    return loop.getScheduler().getPendingCount() + loop.getFrameScheduler().getPendingCount()
+        + session.getCage().getPendingTaskCount();
+  }
+
+  @Override
+  public boolean isPaused() {
+    return session.getLoop().isPaused();
+  }
+
+  @Override
+  public boolean isFrozen() {
+    return session.getLoop().isFrozen();
+  }
+
+  /**
+   * Pauses the game, showing the "paused"-message.
+   */
+  @Override
+  public void pause() {
+    checkControllable();
+    session.getLoop().pause();
+  }
+
+  /**
+   * Freezes the game without any message.
+   */
+  @Override
+  public void freeze() {
+    checkControllable();
+    session.getLoop().freeze();
+  }
+
+  /**
+   * Un-pauses and un-freezes the game, also if the game froze itself (e.g. while Pacman dies).
+   */
+  @Override
+  public void play() {
+    checkControllable();
+    session.getLoop().play();
+  }
+
+  /**
+   * Only the game-loop may halt a replayed game, as recorded. Halting it from a JMX-thread
+   * could land in the middle of a frame and the replay would never catch up again.
+   */
+  private void checkControllable() {
+    if (replay) {
+      throw new UnsupportedOperationException("The game is played back from a recording, it can't be halted");
+    }
+  }
+}
@@ -0,0 +1,58 @@
+package org.ita23.pacman;
+
+/**
+ * The management interface of a running game, see {@code SessionMonitor}.
+ * Durations are in milliseconds.
+ */
+public interface SessionMonitorMBean {
+
+  double getSimulatedFramesPerSecond();
+
+  double getRenderedFramesPerSecond();
+
+  double getLastFrameMillis();
+
+  double getMeanFrameMillis();
+
+  double getP99FrameMillis();
+
+  /**
+   * The mode the ghosts outside of the cage follow, e.g. {@code "CHASE"}.
+   */
+  String getGhostMode();
+
+  int getScore();
+
+  int getLivesLeft();
+
+  /**
+   * The food eaten since the game started, over all rounds.
+   */
+  long getFoodEaten();
+
+  /**
+   * The tasks scheduled on the game-time and frame schedulers of the loop and on the timers
+   * of the cage.
+   */
+  int getPendingTasks();
+
+  boolean isPaused();
+
+  boolean isFrozen();
+
+  /**
+   * Pauses the game. Fails with an {@code UnsupportedOperationException} if the game is
+   * played back from a recording, which decides by itself when the game is halted.
+   */
+  void pause();
+
+  /**
+   * Freezes the game. Fails like {@code pause()} for a replayed game.
+   */
+  void freeze();
+
+  /**
+   * Un-pauses and un-freezes the game. Fails like {@code pause()} for a replayed game.
+   */
+  void play();
+}
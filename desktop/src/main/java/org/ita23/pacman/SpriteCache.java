@@ -0,0 +1,84 @@
+package org.ita23.pacman;
+
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Image;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.ita23.pacman.game.Color;
+import org.ita23.pacman.game.Font;
+import org.ita23.pacman.res.ImageResource;
+
+/**
+ * Long-lived cache for everything a {@code SwingCanvas} needs to draw: the images,
+ * colors and fonts. Create it once and share it across all frames.
+ * The images are converted into the format of the screen they are drawn on, which
+ * allows Java2D to keep them in video memory and accelerate drawing them.
+ */
+public class SpriteCache {
+
+  private final Image[] images;
+  private final Map<Color, java.awt.Color> colorCache;
+  private final Map<Font, java.awt.Font> fontCache;
+
+  /**
+   * Loads all images, converted for the given screen configuration.
+   */
+  public SpriteCache(GraphicsConfiguration config) {
+    ImageResource[] resources = ImageResource.values();
+    this.images = new Image[resources.length];
+    for (ImageResource resource : resources) {
+      this.images[resource.ordinal()] = toCompatibleImage(ClasspathResourceLoader.loadImage(resource), config);
+    }
+    this.colorCache = new HashMap<>();
+    this.fontCache = new HashMap<>();
+  }
+
+  private static Image toCompatibleImage(Image source, GraphicsConfiguration config) {
+    BufferedImage compatible = config.createCompatibleImage(
+        source.getWidth(null), source.getHeight(null), Transparency.TRANSLUCENT
+    );
+    Graphics2D g = compatible.createGraphics();
+    g.drawImage(source, 0, 0, null);
+    g.dispose();
+    return compatible;
+  }
+
+  public Image getImage(ImageResource resource) {
+    return this.images[resource.ordinal()];
+  }
+
+  public java.awt.Color getColor(Color color) {
+    java.awt.Color awtColor = this.colorCache.get(color);
+    if (awtColor == null) {
+      awtColor = new java.awt.Color(color.r, color.g, color.b);
+      this.colorCache.put(color, awtColor);
+    }
+    return awtColor;
+  }
+
+  public java.awt.Font getFont(Font font) {
+    java.awt.Font awtFont = this.fontCache.get(font);
+    if (awtFont == null) {
+      int awtStyle = java.awt.Font.PLAIN;
+
+      switch (font.style) {
+        case BOLD:
+          awtStyle = java.awt.Font.BOLD;
+          break;
+        case ITALIC:
+          awtStyle = java.awt.Font.ITALIC;
+          break;
+        case BOLD_ITALIC:
+          awtStyle = java.awt.Font.BOLD | java.awt.Font.ITALIC;
+          break;
+      }
+      awtFont = new java.awt.Font(font.name, awtStyle, font.size);
+      this.fontCache.put(font, awtFont);
+    }
+    return awtFont;
+  }
+}
@@ -3,10 +3,7 @@ package org.ita23.pacman;
 import java.awt.BasicStroke;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.Image;
 import java.awt.Stroke;
-import java.util.HashMap;
-import java.util.Map;
 
 import org.ita23.pacman.game.Canvas;
 import org.ita23.pacman.game.Color;
@@ -16,56 +13,27 @@ import org.ita23.pacman.res.ImageResource;
 /**
  * A Pacman canvas to draw the game on using Swing/AWT as the underlying
  *  render method.
+ * This is only a thin wrapper around the {@code Graphics} of the current frame,
+ *  all images, colors and fonts come from the long-lived {@code SpriteCache}.
  */
 public class SwingCanvas implements Canvas {
 
   private final Graphics graphics;
-	private final Map<ImageResource, Image> resourceCache;
-	private final Map<Color, java.awt.Color> colorCache;
-	private final Map<Font, java.awt.Font> fontCache;
+  private final SpriteCache sprites;
 
-  public SwingCanvas(Graphics graphics) {
+  public SwingCanvas(Graphics graphics, SpriteCache sprites) {
     this.graphics = graphics;
-    this.resourceCache = new HashMap<>();
-    this.colorCache = new HashMap<>();
-    this.fontCache = new HashMap<>();
-    preloadCache();
-  }
-
-  private void preloadCache() {
-  	for (ImageResource resource : ImageResource.values()) {
-			Image image = ClasspathResourceLoader.loadImage(resource);
-  		this.resourceCache.put(resource, image);
-  	}
+    this.sprites = sprites;
   }
 
 	@Override
 	public void setColor(Color color) {
-		if (!this.colorCache.containsKey(color)) {
-			this.colorCache.put(color, new java.awt.Color(color.r, color.g, color.b));
-		}
-		this.graphics.setColor(this.colorCache.get(color));
+		this.graphics.setColor(this.sprites.getColor(color));
 	}
 
 	@Override
 	public void setFont(Font font) {
-		if (!this.fontCache.containsKey(font)) {
-		  int awtStyle = java.awt.Font.PLAIN;
-
-		  switch (font.style) {
-		    case BOLD:
-		      awtStyle = java.awt.Font.BOLD;
-		      break;
-		    case ITALIC:
-		      awtStyle = java.awt.Font.ITALIC;
-		      break;
-		    case BOLD_ITALIC:
-		      awtStyle = java.awt.Font.BOLD | java.awt.Font.ITALIC;
-		      break;
-		  }
-			this.fontCache.put(font, new java.awt.Font(font.name, awtStyle, font.size));
-		}
-	  this.graphics.setFont(this.fontCache.get(font));
+	  this.graphics.setFont(this.sprites.getFont(font));
 	}
 
 	@Override
@@ -75,12 +43,12 @@ public class SwingCanvas implements Canvas {
 
 	@Override
 	public void drawImage(ImageResource resource, int x, int y) {
-		this.graphics.drawImage(this.resourceCache.get(resource), x, y, null);
+		this.graphics.drawImage(this.sprites.getImage(resource), x, y, null);
 	}
 
 	@Override
 	public void drawImage(ImageResource resource, int x, int y, int width, int height) {
-		this.graphics.drawImage(this.resourceCache.get(resource), x, y, width, height, null);
+		this.graphics.drawImage(this.sprites.getImage(resource), x, y, width, height, null);
 	}
 
 	@Override
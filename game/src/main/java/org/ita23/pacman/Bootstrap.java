@@ -3,30 +3,68 @@ package org.ita23.pacman;
 import org.ita23.pacman.figures.Cage;
 import org.ita23.pacman.figures.Pacman;
 import org.ita23.pacman.game.GameLoop;
+import org.ita23.pacman.game.SoundManager;
 import org.ita23.pacman.logic.ChunkedMap;
 import org.ita23.pacman.logic.GameState;
 
 /**
  * Bootstraps the Game and sets everything up.
- * Afterward, the {@code GameLoop} can be started to launch the game.
+ * Afterward, the {@code GameLoop} of the returned {@code GameSession} can be
+ * started to launch the game.
  */
 public class Bootstrap {
 
-  public static void bootstrap(int window_width, int window_height) {
-    ChunkedMap map = new ChunkedMap(window_width, window_height);
-    GameLoop.INSTANCE.setMap(map);
-    GameLoop.INSTANCE.addRenderEvent(map, map.getZIndex());
+  /**
+   * Sets up a game with a random seed, e.g. one that plays out differently every time.
+   */
+  public static GameSession bootstrap(int window_width, int window_height) {
+    return bootstrap(window_width, window_height, System.nanoTime());
+  }
+
+  /**
+   * Sets up a game where all randomness is derived from the given seed.
+   * The same seed and the same input always play out the same game.
+   */
+  public static GameSession bootstrap(int window_width, int window_height, long seed) {
+    GameLoop loop = new GameLoop(seed);
+    GameState state = new GameState(loop);
+    SoundManager sound = new SoundManager();
+    ChunkedMap map = new ChunkedMap(window_width, window_height, loop, state, sound);
+    return assemble(loop, state, sound, map);
+  }
+
+  /**
+   * Sets up a new game on a fork of the given games map, without any sound.
+   * Only the wiring is done here, the state is copied by {@code GameSession.fork()}.
+   */
+  static GameSession fork(GameSession original) {
+    // Same seed as the original, the state of it's random numbers is copied by the snapshot:
+    GameLoop loop = new GameLoop(original.getLoop().getSeed());
+    GameState state = new GameState(loop);
+    SoundManager sound = new SoundManager();
+    ChunkedMap map = original.getMap().fork(loop, state, sound);
+    return assemble(loop, state, sound, map);
+  }
+
+  /**
+   * Adds the figures to a new game and registers everything with it's loop.
+   * The order of registration must be the same for every game, see {@code GameLoop.addTimerEvent()}.
+   */
+  private static GameSession assemble(GameLoop loop, GameState state, SoundManager sound, ChunkedMap map) {
+    loop.setMap(map);
+    loop.addRenderEvent(map, map.getZIndex());
     // Add the game-state
-    GameLoop.INSTANCE.addRenderEvent(GameState.INSTANCE, 0);
+    loop.addRenderEvent(state, 0);
     // Add Pacman
-    Pacman pacman = new Pacman(map.getStartPoint());
-    GameLoop.INSTANCE.addRenderEvent(pacman, pacman.getZIndex());
-    GameLoop.INSTANCE.addInputEvent(pacman);
-    GameLoop.INSTANCE.addCollusionEvent(pacman);
-    GameLoop.INSTANCE.addMovementEvent(pacman);
+    Pacman pacman = new Pacman(map.getStartPoint(), state, sound);
+    loop.addRenderEvent(pacman, pacman.getZIndex());
+    loop.addInputEvent(pacman);
+    loop.addCollusionEvent(pacman);
+    loop.addMovementEvent(pacman);
     // Add the ghost-cage (including the ghosts):
-    Cage cage = new Cage(map.getCagePoint(), pacman);
-    GameLoop.INSTANCE.addRenderEvent(cage, 2);
+    Cage cage = new Cage(map.getCagePoint(), pacman, loop, state, sound);
+    loop.addRenderEvent(cage, 2);
+    return new GameSession(loop, state, sound, map, pacman, cage);
   }
 
 }
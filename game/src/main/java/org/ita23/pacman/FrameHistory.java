@@ -0,0 +1,136 @@
+package org.ita23.pacman;
+
+import org.ita23.pacman.figures.Cage;
+import org.ita23.pacman.figures.Pacman;
+import org.ita23.pacman.game.GameLoop;
+import org.ita23.pacman.game.InputEvent;
+import org.ita23.pacman.logic.GameState;
+
+/**
+ * Remembers what happened in the last frames of a game, so it can be written out after a
+ * crash (or whenever asked to) and the game can be followed up to the crash.
+ * Every frame is kept as a compact record of primitives in a ring-buffer: the input, the
+ * positions and modes of Pacman and the ghosts, the score, the lives and how long the frame
+ * took. Recording a frame only copies a few numbers and never allocates.
+ * The thread running the game records the frames. Any other thread may {@code dump()} them
+ * at the same time, without any locking: frames which were overwritten while dumping are
+ * left out.
+ */
+public class FrameHistory {
+
+  /** The fields of a record before the ghosts: nanos, the game and Pacman */
+  private static final int FIELDS = 3;
+  private static final InputEvent.JoystickState[] INPUTS = InputEvent.JoystickState.values();
+
+  private final GameSession session;
+  private final int capacity;
+  /** The number of {@code long}s per frame */
+  private final int stride;
+  /** The records of the last frames, the one of frame {@code n} is at {@code n % capacity} */
+  private final long[] records;
+  /** The number of recorded frames, only touched by the recording thread */
+  private long count;
+  /** Where the record of the next frame starts, only touched by the recording thread */
+  private int next;
+  /** The number of completely recorded frames, all records before this are readable */
+  private volatile long published;
+
+  /**
+   * @param session the game to record.
+   * @param frames the number of frames to keep, e.g. {@code 10 * GameLoop.FRAMES_PER_SECOND}
+   * for the last ten seconds.
+   */
+  public FrameHistory(GameSession session, int frames) {
+    if (frames <= 0) {
+      throw new IllegalArgumentException("Must keep at least one frame, was " + frames);
+    }
+    this.session = session;
+    this.capacity = frames;
+    this.stride = FIELDS + session.getCage().getGhostCount();
+    this.records = new long[frames * stride];
+  }
+
+  /**
+   * Records the current state of the game, right after a frame.
+   * @param frame_nanos how long the frame took.
+   */
+  public void record(long frame_nanos) {
+    GameLoop loop = session.getLoop();
+    GameState state = session.getState();
+    Pacman pacman = session.getPacman();
+    Cage cage = session.getCage();
+    int at = next;
+    records[at] = frame_nanos;
+    records[at + 1] = loop.getLastInput().ordinal()
+        | (loop.isFrozen() ? 0x10 : 0) | (loop.isPaused() ? 0x20 : 0)
+        | (state.getLivesLeft() & 0xFFL) << 8
+        | (cage.getGlobalMode() & 0xFFL) << 16
+        | (long) state.getScore() << 32;
+    records[at + 2] = position(pacman.getX(), pacman.getY());
+    for (int i = 0; i < stride - FIELDS; i++) {
+      records[at + FIELDS + i] = position(cage.getGhostX(i), cage.getGhostY(i))
+          | (long) cage.getGhostMode(i) << 32;
+    }
+    next = (at + stride == records.length) ? 0 : at + stride;
+    published = ++count;
+  }
+
+  /**
+   * Get the number of frames recorded so far, including the ones no longer kept.
+   */
+  public long getFrameCount() {
+    return published;
+  }
+
+  /**
+   * Lists the kept frames, oldest first, one per line.
+   * Each frame starts with it's number (counting from {@code 0} for the first recorded
+   * frame) and the microseconds it took. Positions are given as {@code x/y}.
+   */
+  public String dump() {
+    long end = published;
+    long[] copy = records.clone();
+    // Frames recorded while copying (and the one being recorded) overwrote the oldest ones:
+    long after = published;
+    long first = Math.max(0, after + 1 - capacity);
+    Cage cage = session.getCage();
+    StringBuilder dump = new StringBuilder();
+    dump.append("# Frames ").append(first).append(" to ").append(end - 1)
+        .append(" of the game with seed ").append(session.getLoop().getSeed()).append('\n');
+    dump.append("frame,micros,input,running,score,lives,mode,pacman");
+    for (int i = 0; i < stride - FIELDS; i++) {
+      dump.append(',').append(cage.getGhostName(i));
+    }
+    dump.append('\n');
+    for (long frame = first; frame < end; frame++) {
+      int at = (int) (frame % capacity) * stride;
+      long game = copy[at + 1];
+      dump.append(frame).append(',').append(copy[at] / 1000)
+          .append(',').append(INPUTS[(int) (game & 0x0F)])
+          .append(',').append((game & 0x10) != 0 ? "frozen" : (game & 0x20) != 0 ? "paused" : "yes")
+          .append(',').append((int) (game >>> 32))
+          .append(',').append((game >>> 8) & 0xFF)
+          .append(',').append(Cage.getModeName((byte) (game >>> 16)))
+          .append(',');
+      appendPosition(dump, copy[at + 2]);
+      for (int i = FIELDS; i < stride; i++) {
+        dump.append(',');
+        appendPosition(dump, copy[at + i]);
+        dump.append(' ').append(Cage.getModeName((int) (copy[at + i] >>> 32)));
+      }
+      dump.append('\n');
+    }
+    return dump.toString();
+  }
+
+  /**
+   * Packs a position into the lower 32 bits.
+   */
+  private static long position(int x, int y) {
+    return (x & 0xFFFFL) | (y & 0xFFFFL) << 16;
+  }
+
+  private static void appendPosition(StringBuilder out, long position) {
+    out.append((short) position).append('/').append((short) (position >>> 16));
+  }
+}
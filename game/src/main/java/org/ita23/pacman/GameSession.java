@@ -0,0 +1,177 @@
+package org.ita23.pacman;
+
+import org.ita23.pacman.figures.Cage;
+import org.ita23.pacman.figures.Pacman;
+import org.ita23.pacman.game.GameLoop;
+import org.ita23.pacman.game.Snapshotable;
+import org.ita23.pacman.game.SoundManager;
+import org.ita23.pacman.game.Zobrist;
+import org.ita23.pacman.logic.ChunkedMap;
+import org.ita23.pacman.logic.GameState;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A single, self-contained game of Pacman. The session owns it's own loop,
+ * state, map, cage and figures, so any number of games can run side by side
+ * in the same JVM.
+ * Use {@code Bootstrap.bootstrap()} to create a new session.
+ * The complete state of a running session can be written into a binary snapshot
+ * and be restored later on, into the same or any other session. To try out
+ * different futures of a running game, {@code fork()} it instead.
+ * A session must only be used by one thread at a time, except for forking it, see {@code fork()}.
+ */
+public class GameSession implements Snapshotable {
+
+  /** Marks the start of a snapshot, including it's format-version */
+  private static final int SNAPSHOT_MAGIC = 0x504D5301;
+
+  private final GameLoop loop;
+  private final GameState state;
+  private final SoundManager sound;
+  private final ChunkedMap map;
+  private final Pacman pacman;
+  private final Cage cage;
+
+  GameSession(GameLoop loop, GameState state, SoundManager sound, ChunkedMap map, Pacman pacman, Cage cage) {
+    this.loop = loop;
+    this.state = state;
+    this.sound = sound;
+    this.map = map;
+    this.pacman = pacman;
+    this.cage = cage;
+  }
+
+  public GameLoop getLoop() {
+    return loop;
+  }
+
+  public GameState getState() {
+    return state;
+  }
+
+  public SoundManager getSoundManager() {
+    return sound;
+  }
+
+  public ChunkedMap getMap() {
+    return map;
+  }
+
+  public Pacman getPacman() {
+    return pacman;
+  }
+
+  public Cage getCage() {
+    return cage;
+  }
+
+  /**
+   * The amount of bytes a snapshot of the current state takes.
+   */
+  @Override
+  public int getSnapshotSize() {
+    return 4 + loop.getSnapshotSize() + state.getSnapshotSize() + map.getSnapshotSize()
+        + pacman.getSnapshotSize() + cage.getSnapshotSize();
+  }
+
+  /**
+   * Writes the complete state of this game into the given buffer, at it's current position.
+   * Use {@code getSnapshotSize()} to size the buffer. Reusing the same buffer for many
+   * snapshots avoids any allocation.
+   * @throws java.nio.BufferOverflowException if there is not enough space left in the buffer.
+   */
+  public void snapshot(ByteBuffer out) {
+    out.putInt(SNAPSHOT_MAGIC);
+    loop.writeSnapshot(out);
+    state.writeSnapshot(out);
+    map.writeSnapshot(out);
+    pacman.writeSnapshot(out);
+    cage.writeSnapshot(out);
+  }
+
+  /**
+   * Writes the complete state of this game into a new buffer.
+   * @return the snapshot, ready to be read from.
+   */
+  public ByteBuffer snapshot() {
+    ByteBuffer out = ByteBuffer.allocate(getSnapshotSize());
+    snapshot(out);
+    out.flip();
+    return out;
+  }
+
+  @Override
+  public void writeSnapshot(ByteBuffer out) {
+    snapshot(out);
+  }
+
+  @Override
+  public void readSnapshot(ByteBuffer in) {
+    restore(in);
+  }
+
+  /**
+   * Restores the state of a game from the given buffer, as written by {@code snapshot()}.
+   * The snapshot may come from another session, as long as it was set up the same way.
+   * No listeners are notified and no sounds are played.
+   * @throws IllegalArgumentException if the buffer doesn't start with a snapshot.
+   */
+  public void restore(ByteBuffer in) {
+    int magic = in.getInt();
+    if (magic != SNAPSHOT_MAGIC) {
+      throw new IllegalArgumentException("Not a snapshot (or unsupported version): " + Integer.toHexString(magic));
+    }
+    loop.readSnapshot(in);
+    state.readSnapshot(in);
+    map.readSnapshot(in);
+    pacman.readSnapshot(in);
+    cage.readSnapshot(in);
+  }
+
+  /**
+   * Get a 64bit hash of the current state of this game, e.g. to detect desyncs between
+   * replays or to find states that were already visited.
+   * Equal games have an equal hash, games with an equal hash (barring collisions) play out
+   * the same given the same input. Everything carried over to the next frame is part of it,
+   * including the pending tasks of all schedulers and timers and the state of all random
+   * numbers. Only what is just drawn (e.g. animations) is left out.
+   * The hash of the map is kept up to date as the food is eaten, everything else is mixed
+   * in on demand, so this is cheap to call every frame.
+   */
+  public long getStateHash() {
+    long hash = Zobrist.mix(map.getStateHash(), state.getStateHash());
+    hash = Zobrist.mix(hash, pacman.getStateHash());
+    hash = Zobrist.mix(hash, cage.getStateHash());
+    return Zobrist.mix(hash, loop.getStateHash());
+  }
+
+  /**
+   * Creates an independent copy of this game, continuing from the current frame.
+   * Both games play out the same way when given the same input from here on.
+   * The fork has no sound.
+   * Forking is cheap: the maze (and it's graph) is shared, the chunks of the map are
+   * only copied once either game changes them. Everything else is copied right away.
+   * Forking only reads this game, so many threads may fork the same game at the same time,
+   * e.g. to play out different futures in parallel. Nothing may step, restore or
+   * otherwise change this game while it's being forked.
+   */
+  public GameSession fork() {
+    GameSession fork = Bootstrap.fork(this);
+    int size = loop.getSnapshotSize() + state.getSnapshotSize() + pacman.getSnapshotSize() + cage.getSnapshotSize();
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    loop.writeSnapshot(buffer);
+    state.writeSnapshot(buffer);
+    pacman.writeSnapshot(buffer);
+    cage.writeSnapshot(buffer);
+    buffer.flip();
+    fork.loop.readSnapshot(buffer);
+    fork.state.readSnapshot(buffer);
+    fork.pacman.readSnapshot(buffer);
+    fork.cage.readSnapshot(buffer);
+    if (loop.isLocked()) {
+      fork.loop.lock();
+    }
+    return fork;
+  }
+}
@@ -35,8 +35,8 @@ class Blinky extends Ghost{
     /**
      * Create a new instance of the red ghost.
      */
-    public Blinky(Pacman player){
-        super(player);
+    public Blinky(Cage cage, Pacman player){
+        super(cage, player);
         target = new Point(0, 0);
         // Load the images:
         ghost_down = new ImageResource[]{
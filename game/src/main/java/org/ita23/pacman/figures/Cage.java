@@ -3,19 +3,26 @@ package org.ita23.pacman.figures;
 import org.ita23.pacman.figures.Ghost.Mode;
 import org.ita23.pacman.game.Canvas;
 import org.ita23.pacman.game.Color;
+import org.ita23.pacman.game.CollusionTest;
 import org.ita23.pacman.game.GameLoop;
 import org.ita23.pacman.game.MovementEvent;
 import org.ita23.pacman.game.RenderEvent;
+import org.ita23.pacman.game.Scheduler;
+import org.ita23.pacman.game.SkippableEvent;
+import org.ita23.pacman.game.Snapshotable;
 import org.ita23.pacman.game.SoundManager;
+import org.ita23.pacman.game.TimerEvent;
+import org.ita23.pacman.game.Zobrist;
 import org.ita23.pacman.logic.*;
 import org.ita23.pacman.logic.ChunkedMap.Chunk;
 import org.ita23.pacman.res.SoundResource;
 import org.ita23.pacman.logic.Point;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Timer;
-import java.util.TimerTask;
 
 /**
  * The cage, in which three of the four ghosts start.</p>
@@ -24,7 +31,7 @@ import java.util.TimerTask;
  * @author Lukas Knuth
  * @version 1.0
  */
-public class Cage implements RenderEvent, StateListener, MovementEvent, FoodListener{
+public class Cage implements RenderEvent, StateListener, MovementEvent, SkippableEvent, FoodListener, TimerEvent, Snapshotable{
     
     /** The upper-left point of the cage */
     private final Point p;
@@ -37,18 +44,31 @@ public class Cage implements RenderEvent, StateListener, MovementEvent, FoodList
     private final static int EXTRA_SPACE = 10;
 
     /** The timer which releases the ghosts one by one from their cage */
-    private Timer release_timer;
+    private final Scheduler release_timer;
     /** The timer used to change the modes after given intervals */
-    private Timer mode_timer;
+    private final Scheduler mode_timer;
     /** The timer used to change back to the previous mode when frighted */
-    private Timer freighted_timer;
-    /** The time-stamp from when the {@code mode_timer} was last set */
-    private long mode_timer_stamp;
-    /** The time that has elapsed since the {@code mode_timer} has started */
-    private int time_elapsed;
+    private final Scheduler freighted_timer;
+    /** Weather the {@code mode_timer} is currently paused */
+    private boolean mode_timer_paused;
     /** The current "globe"-mode (Ghosts sometimes have individual ones) */
     private Mode global_mode;
 
+    /** Task to release pinky from the cage */
+    private static final int TASK_RELEASE_PINKY = 0;
+    /** Task to release inky from the cage */
+    private static final int TASK_RELEASE_INKY = 1;
+    /** Task to release clyde from the cage */
+    private static final int TASK_RELEASE_CLYDE = 2;
+    /** Task to reset the ghosts after pacman lost a live */
+    private static final int TASK_RESET = 3;
+    /** Task to let the frightened ghosts blink, shortly before the period ends */
+    private static final int TASK_BLINK = 4;
+    /** Task to end the FRIGHTENED-mode period */
+    private static final int TASK_FRIGHTENED_OVER = 5;
+    /** Task to change the global mode, the ordinal of the new mode is added to it */
+    private static final int TASK_MODE_CHANGE = 8;
+
     /** Collects all ghosts, mapped to their names. */
     private final Map<String, Ghost> ghosts;
     /** The key for the red ghost */
@@ -59,56 +79,91 @@ public class Cage implements RenderEvent, StateListener, MovementEvent, FoodList
     private static final String CLYDE = "clyde";
     /** The key for the blue ghost */
     private static final String INKY = "inky";
+    /** The order in which the ghosts are written to snapshots */
+    private static final String[] SNAPSHOT_ORDER = {BLINKY, PINKY, INKY, CLYDE};
+    /** The ghosts in the order of {@code SNAPSHOT_ORDER}, to look them up by index */
+    private final Ghost[] ordered_ghosts;
+    /** All modes, indexed by their ordinal */
+    private static final Mode[] MODES = Mode.values();
+
+    /** Counts how many ghosts have been eaten during this FRIGHTENED-mode period */
+    private int kill_combo;
+
+    /** The game-loop of the game this cage belongs to */
+    private final GameLoop loop;
+    /** The state of the game this cage belongs to */
+    private final GameState state;
+    /** Plays the sounds of the game this cage belongs to */
+    private final SoundManager sound;
+    /** The registered {@code ModeListener}s */
+    private final List<ModeListener> modeListeners;
     
     /**
      * Creates a new cage which holds the ghosts. 
      * @param p the point on which the cage should start.
      * @param player the current player-instance.
+     * @param loop the game-loop to register the ghosts with.
+     * @param state the state of the game.
+     * @param sound plays the sounds of the game.
      */
-    public Cage(Point p, Pacman player){
+    public Cage(Point p, Pacman player, GameLoop loop, GameState state, SoundManager sound){
         this.p = p;
+        this.loop = loop;
+        this.state = state;
+        this.sound = sound;
         this.door = new Point(p.getX() + Chunk.CHUNK_SIZE*3,  p.getY());
         this.ghost_start = new Point(door.getX(), door.getY()+Chunk.CHUNK_SIZE);
-        // Timer stuff:
-        mode_timer = new Timer();
-        time_elapsed = -1;
+        // Timer stuff, ticked in game-time by move():
+        release_timer = new Scheduler();
+        mode_timer = new Scheduler();
+        freighted_timer = new Scheduler();
+        mode_timer_paused = false;
+        modeListeners = new ArrayList<ModeListener>(1);
         // Create the ghosts:
         ghosts = new HashMap<String, Ghost>(4);
-        Ghost blinky = new Blinky(player);
-        GameLoop.INSTANCE.addMovementEvent(blinky);
-        GameLoop.INSTANCE.addCollusionEvent(blinky);
-        GameLoop.INSTANCE.addRenderEvent(blinky, 0);
+        Ghost blinky = new Blinky(this, player);
+        loop.addMovementEvent(blinky);
+        loop.addCollusionEvent(blinky);
+        loop.addRenderEvent(blinky, 0);
+        loop.addTimerEvent(blinky);
         blinky.moveTo(new Point(ghost_start.getX(), ghost_start.getY()-(2*Chunk.CHUNK_SIZE)));
         ghosts.put(BLINKY, blinky);
         // Add Pinky:
-        Ghost pinky = new Pinky(player);
-        GameLoop.INSTANCE.addMovementEvent(pinky);
-        GameLoop.INSTANCE.addCollusionEvent(pinky);
-        GameLoop.INSTANCE.addRenderEvent(pinky, 0);
+        Ghost pinky = new Pinky(this, player);
+        loop.addMovementEvent(pinky);
+        loop.addCollusionEvent(pinky);
+        loop.addRenderEvent(pinky, 0);
+        loop.addTimerEvent(pinky);
         pinky.moveTo(new Point(ghost_start.getX()+8, ghost_start.getY()+Chunk.CHUNK_SIZE));
         ghosts.put(PINKY, pinky);
         // Add Inky:
-        Ghost inky = new Inky(player, (Blinky)blinky);
-        GameLoop.INSTANCE.addMovementEvent(inky);
-        GameLoop.INSTANCE.addCollusionEvent(inky);
-        GameLoop.INSTANCE.addRenderEvent(inky, 0);
+        Ghost inky = new Inky(this, player, (Blinky)blinky);
+        loop.addMovementEvent(inky);
+        loop.addCollusionEvent(inky);
+        loop.addRenderEvent(inky, 0);
+        loop.addTimerEvent(inky);
         inky.moveTo(
                 new Point(ghost_start.getX()-Chunk.CHUNK_SIZE*2+8, ghost_start.getY() + Chunk.CHUNK_SIZE)
         );
         ghosts.put(INKY, inky);
         // Add Clyde:
-        Ghost clyde = new Clyde(player);
-        GameLoop.INSTANCE.addMovementEvent(clyde);
-        GameLoop.INSTANCE.addCollusionEvent(clyde);
-        GameLoop.INSTANCE.addRenderEvent(clyde, 0);
+        Ghost clyde = new Clyde(this, player);
+        loop.addMovementEvent(clyde);
+        loop.addCollusionEvent(clyde);
+        loop.addRenderEvent(clyde, 0);
+        loop.addTimerEvent(clyde);
         clyde.moveTo(
                 new Point(ghost_start.getX()+Chunk.CHUNK_SIZE*2+8, ghost_start.getY() + Chunk.CHUNK_SIZE)
         );
         ghosts.put(CLYDE, clyde);
+        ordered_ghosts = new Ghost[SNAPSHOT_ORDER.length];
+        for (int i = 0; i < SNAPSHOT_ORDER.length; i++)
+            ordered_ghosts[i] = ghosts.get(SNAPSHOT_ORDER[i]);
         // Register self to game-state listener:
-        GameState.INSTANCE.addStateListener(this);
-        GameLoop.INSTANCE.addMovementEvent(this);
-        GameState.INSTANCE.addFoodListener(this);
+        state.addStateListener(this);
+        loop.addMovementEvent(this);
+        state.addFoodListener(this);
+        loop.addTimerEvent(this);
     }
 
     /**
@@ -130,28 +185,14 @@ public class Cage implements RenderEvent, StateListener, MovementEvent, FoodList
                 new Point(ghost_start.getX()+Chunk.CHUNK_SIZE*2+8, ghost_start.getY() + Chunk.CHUNK_SIZE)
         );
         // Set the timer:
-        release_timer = new Timer();
-        release_timer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                ghosts.get(PINKY).start(ghost_start);
-            }
-        }, 2*1000);
-        release_timer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                ghosts.get(INKY).start(ghost_start);
-            }
-        }, 3*1000);
-        release_timer.schedule(new TimerTask() {
-            @Override
-            public void run() {
-                ghosts.get(CLYDE).start(ghost_start);
-            }
-        }, 5*1000);
+        release_timer.clear();
+        release_timer.schedule(this, TASK_RELEASE_PINKY, 2*1000);
+        release_timer.schedule(this, TASK_RELEASE_INKY, 3*1000);
+        release_timer.schedule(this, TASK_RELEASE_CLYDE, 5*1000);
         // TODO Also implement the point-counter!
         // Schedule the mode-changes:
         global_mode = Mode.SCATTER;
+        notifyModeChanged(Mode.SCATTER);
         int timer = 0;
         scheduleModeChange(Mode.CHASE, timer+=7);
         scheduleModeChange(Mode.SCATTER, timer+=20);
@@ -160,7 +201,6 @@ public class Cage implements RenderEvent, StateListener, MovementEvent, FoodList
         scheduleModeChange(Mode.CHASE, timer+=5);
         scheduleModeChange(Mode.SCATTER, timer+=20);
         scheduleModeChange(Mode.CHASE, timer+=5);
-        mode_timer_stamp = System.currentTimeMillis();
     }
 
     /**
@@ -169,12 +209,62 @@ public class Cage implements RenderEvent, StateListener, MovementEvent, FoodList
      */
     private void reset(){
         // Stop the timer:
-        release_timer.cancel();
+        release_timer.clear();
         // Just stop the ghosts (original positions are used in start())
         for (Ghost g : ghosts.values())
             g.stop(ghost_start);
     }
 
+    /**
+     * Get one of the ghosts in this cage.
+     * @param name the name of the ghost, e.g. "blinky".
+     * @return the ghost, or {@code null} if there is no ghost with that name.
+     */
+    Ghost getGhost(String name){
+        return ghosts.get(name);
+    }
+
+    /**
+     * Get the point the ghosts start from when leaving the cage, which is
+     *  also the point they return to after being eaten.
+     * @return the start-point of the ghosts.
+     */
+    Point getGhostStart(){
+        return ghost_start;
+    }
+
+    /**
+     * Get the state of the game this cage (and it's ghosts) belong to.
+     * @return the state of the game.
+     */
+    GameState getGameState(){
+        return state;
+    }
+
+    /**
+     * Get the game-loop of the game this cage (and it's ghosts) belong to.
+     * @return the game-loop of the game.
+     */
+    GameLoop getGameLoop(){
+        return loop;
+    }
+
+    /**
+     * Counts another ghost eaten during the current FRIGHTENED-mode period.
+     * @return how many ghosts have been eaten during this period, including
+     *  the one just eaten.
+     */
+    int nextKill(){
+        return ++kill_combo;
+    }
+
+    /**
+     * Resets the count of eaten ghosts, when a new FRIGHTENED-mode period starts.
+     */
+    void resetKills(){
+        kill_combo = 0;
+    }
+
     @Override
     public void render(Canvas c) {
         float old = c.getStrokeWidth();
@@ -193,28 +283,61 @@ public class Cage implements RenderEvent, StateListener, MovementEvent, FoodList
     }
 
     @Override
-    public void stateChanged(States state) {
-        if (state == States.LIVE_LOST){
+    public void stateChanged(States new_state) {
+        if (new_state == States.LIVE_LOST){
             // Pause and play melody:
-            GameLoop.INSTANCE.freeze();
-            SoundManager.INSTANCE.play(SoundResource.DIEING);
-            new Timer().schedule(new TimerTask() {
-                @Override
-                public void run() {
-                    // Reset the ghosts:
-                    reset();
-                    GameLoop.INSTANCE.play();
-                }
-            }, 2000);
-        } else if (state == States.ROUND_WON || state == States.GAME_OVER){
+            loop.freeze();
+            sound.play(SoundResource.DIEING);
+            // Must keep counting while frozen:
+            loop.getFrameScheduler().schedule(this, TASK_RESET, 2000);
+        } else if (new_state == States.ROUND_WON || new_state == States.GAME_OVER){
             // Just reset the ghosts:
             reset();
         }
         // Anyways, always reset the mode-timer:
-        mode_timer.cancel();
-        mode_timer = new Timer();
+        mode_timer.clear();
+        mode_timer_paused = false;
         // Reset the frightening mode:
-        if (freighted_timer != null) freighted_timer.cancel();
+        freighted_timer.clear();
+    }
+
+    @Override
+    public void timerExpired(int task) {
+        switch (task){
+            case TASK_RELEASE_PINKY:
+                ghosts.get(PINKY).start(ghost_start);
+                break;
+            case TASK_RELEASE_INKY:
+                ghosts.get(INKY).start(ghost_start);
+                break;
+            case TASK_RELEASE_CLYDE:
+                ghosts.get(CLYDE).start(ghost_start);
+                break;
+            case TASK_RESET:
+                // Reset the ghosts:
+                reset();
+                loop.play();
+                break;
+            case TASK_BLINK:
+                // No direction-reverse!
+                global_mode = Mode.BLINKING;
+                notifyModeChanged(Mode.BLINKING);
+                // Change the ghosts which are not eaten yet:
+                for (Ghost g : ghosts.values()){
+                    if (g.getIndividualMode() == Mode.FRIGHTENED)
+                        g.setCurrentMode(Mode.BLINKING);
+                }
+                break;
+            case TASK_FRIGHTENED_OVER:
+                for (Ghost g : ghosts.values()){
+                    g.setCurrentMode(last_mode);
+                }
+                notifyModeChanged(last_mode);
+                unpauseModeTimer();
+                break;
+            default:
+                changeMode(MODES[task - TASK_MODE_CHANGE]);
+        }
     }
 
     /** The last mode before changing to {@code Mode.FRIGHTENED} */
@@ -228,34 +351,15 @@ public class Cage implements RenderEvent, StateListener, MovementEvent, FoodList
             if (global_mode != Mode.FRIGHTENED && global_mode != Mode.BLINKING){
                 last_mode = global_mode;
             } else if (global_mode == Mode.FRIGHTENED || global_mode == Mode.BLINKING) {
-                freighted_timer.cancel();
+                freighted_timer.clear();
             }
             // Reset to the previous mode after five seconds:
-            freighted_timer = new Timer();
-            freighted_timer.schedule(new ModeChangeTask(Mode.BLINKING){
-                @Override
-                public void run() {
-                    // No direction-reverse!
-                    global_mode = this.mode;
-                    // Change the ghosts which are not eaten yet:
-                    for (Ghost g : ghosts.values()){
-                        if (g.getIndividualMode() == Mode.FRIGHTENED)
-                            g.setCurrentMode(this.mode);
-                    }
-                }
-            }, 3 * 1000);
-            freighted_timer.schedule(new ModeChangeTask(last_mode) {
-                @Override
-                public void run() {
-                    for (Ghost g : ghosts.values()){
-                        g.setCurrentMode(this.mode);
-                    }
-                    unpauseModeTimer();
-                }
-            }, 5 * 1000);
+            freighted_timer.schedule(this, TASK_BLINK, 3 * 1000);
+            freighted_timer.schedule(this, TASK_FRIGHTENED_OVER, 5 * 1000);
             // Set the current mode to frightened:
             for (Ghost g : ghosts.values())
                 g.setCurrentMode(Mode.FRIGHTENED);
+            notifyModeChanged(Mode.FRIGHTENED);
             // Force the direction-change:
             for (Ghost g : ghosts.values())
                 g.forceDirectionChange();
@@ -264,11 +368,33 @@ public class Cage implements RenderEvent, StateListener, MovementEvent, FoodList
 
     @Override
     public void move() {
+        // Advance the game-time for all timers:
+        release_timer.tick();
+        if (!mode_timer_paused)
+            mode_timer.tick();
+        freighted_timer.tick();
         if (ghosts.get(BLINKY).isCaged()){
             start();
         }
     }
 
+    @Override
+    public int getSkippableFrames(CollusionTest tester) {
+        if (ghosts.get(BLINKY).isCaged()) return 0;
+        int frames = Math.min(release_timer.getIdleFrames(), freighted_timer.getIdleFrames());
+        if (!mode_timer_paused)
+            frames = Math.min(frames, mode_timer.getIdleFrames());
+        return frames;
+    }
+
+    @Override
+    public void skipFrames(int frames) {
+        release_timer.skip(frames);
+        if (!mode_timer_paused)
+            mode_timer.skip(frames);
+        freighted_timer.skip(frames);
+    }
+
     /**
      * Schedules a mode-change for execution after the given amount of time.
      * @param mode the mode the shell be set after the timeout.
@@ -279,7 +405,7 @@ public class Cage implements RenderEvent, StateListener, MovementEvent, FoodList
         if (time_sec <= 0)
             throw new IllegalArgumentException("Time can't be <= 0");
         // Schedule the timer:
-        mode_timer.schedule(new ModeChangeTask(mode), time_sec * 1000);
+        mode_timer.schedule(this, TASK_MODE_CHANGE + mode.ordinal(), time_sec * 1000);
     }
 
     /**
@@ -289,78 +415,200 @@ public class Cage implements RenderEvent, StateListener, MovementEvent, FoodList
      * @see #pauseModeTimer()
      */
     private void unpauseModeTimer(){
-        // Check if it was previously paused:
-        if (time_elapsed == -1) return;
-        // It is paused so restart where we left:
-        mode_timer = new Timer();
-        int timer = 0;
-        if (time_elapsed < (timer+=7))
-            scheduleModeChange(Mode.CHASE, timer-time_elapsed);
-        if (time_elapsed < (timer+=20))
-            scheduleModeChange(Mode.SCATTER, timer-time_elapsed);
-        if (time_elapsed < (timer+=7))
-            scheduleModeChange(Mode.CHASE, timer-time_elapsed);
-        if (time_elapsed < (timer+=20))
-            scheduleModeChange(Mode.SCATTER, timer-time_elapsed);
-        if (time_elapsed < (timer+=5))
-            scheduleModeChange(Mode.CHASE, timer-time_elapsed);
-        if (time_elapsed < (timer+=20))
-            scheduleModeChange(Mode.SCATTER, timer-time_elapsed);
-        if (time_elapsed < (timer+=5))
-            scheduleModeChange(Mode.CHASE, timer-time_elapsed);
-        // Renew the time-stamp:
-        mode_timer_stamp = System.currentTimeMillis()-(time_elapsed*1000);
-        time_elapsed = -1;
+        mode_timer_paused = false;
     }
 
     /**
      * This method will effectively pause all currently scheduled mode-changes (which
      *  where made with the {@code scheduleModeChange()}-method).</p>
-     * Multiple calls to this method will have no effect as long as the mode-timer
-     *  has not been continued yet.</p>
-     * To continue the scheduled mode-changes, use the {@code unpauseModeTimer()}-
-     *  method.
+     * As the {@code mode_timer} only advances when it's ticked, pausing simply stops
+     *  ticking it until the {@code unpauseModeTimer()}-method is called.
      * @see #scheduleModeChange(org.ita23.pacman.figures.Ghost.Mode, int)
      * @see #unpauseModeTimer()
      */
     private void pauseModeTimer(){
-        // Check if already paused:
-        if (time_elapsed != -1) return;
-        // Not yet paused, pause:
-        time_elapsed = (int) ((System.currentTimeMillis() - mode_timer_stamp) / 1000);
-        mode_timer.cancel();
+        mode_timer_paused = true;
     }
 
     /**
-     * A custom {@code TimerTask}, which will change the current {@code Mode} of
-     *  all ghosts.</p>
-     * It can be scheduled by using it with the a {@code Timer} or by using the
-     *  {@code scheduleModeChange()}-method. The latter should be preferred.
+     * Changes the current {@code Mode} of all ghosts, as scheduled with the
+     *  {@code scheduleModeChange()}-method.
+     * @param mode the new mode.
      * @see #scheduleModeChange(org.ita23.pacman.figures.Ghost.Mode, int)
      */
-    private class ModeChangeTask extends TimerTask {
+    private void changeMode(Mode mode){
+        global_mode = mode;
+        // Force the direction-change:
+        for (Ghost g : ghosts.values())
+            g.forceDirectionChange();
+        // Change the mode:
+        for (Ghost g : ghosts.values())
+            g.setCurrentMode(mode);
+        notifyModeChanged(mode);
+    }
+
+    /**
+     * Adds a new {@code ModeListener} to the list of registered listeners.
+     * @param listener the new listener.
+     */
+    public void addModeListener(ModeListener listener){
+        modeListeners.add(listener);
+    }
 
-        protected final Mode mode;
+    private void notifyModeChanged(Mode mode){
+        for (ModeListener listener : modeListeners)
+            listener.modeChanged(mode.name());
+    }
 
-        /**
-         * Creates a new {@code TimerTask}, which will change the current-mode for
-         *  all ghosts to the given one.
-         * @param mode the new mode.
-         */
-        public ModeChangeTask(Mode mode){
-            this.mode = mode;
-        }
+    /**
+     * Get a hash of the current state of one of the ghosts in this cage.
+     * @param name the name of the ghost, e.g. {@code "blinky"}.
+     * @return the hash of the ghost.
+     * @throws IllegalArgumentException if there is no ghost with this name.
+     * @see Ghost#getStateHash()
+     */
+    public long getGhostHash(String name){
+        Ghost ghost = ghosts.get(name);
+        if (ghost == null)
+            throw new IllegalArgumentException("There is no ghost named "+name);
+        return ghost.getStateHash();
+    }
 
-        @Override
-        public void run() {
-            global_mode = this.mode;
-            // Force the direction-change:
-            for (Ghost g : ghosts.values())
-                g.forceDirectionChange();
-            // Change the mode:
-            System.out.println("Mode change to " + mode);
-            for (Ghost g : ghosts.values())
-                g.setCurrentMode(mode);
-        }
+    /**
+     * Get a hash of the current "globe"-mode, which the ghosts outside of the
+     *  cage follow.
+     * @return the hash of the mode.
+     */
+    public long getModeHash(){
+        return global_mode == null ? -1 : global_mode.ordinal();
+    }
+
+    /**
+     * Get the number of tasks the cage has scheduled on it's own timers, e.g.
+     *  to release the ghosts or to change their mode.
+     * @return the number of pending tasks.
+     */
+    public int getPendingTaskCount(){
+        return release_timer.getPendingCount() + mode_timer.getPendingCount()
+                + freighted_timer.getPendingCount();
+    }
+
+    /**
+     * Get the number of ghosts in this cage.
+     * @return the number of ghosts.
+     */
+    public int getGhostCount(){
+        return ordered_ghosts.length;
+    }
+
+    /**
+     * Get the name of one of the ghosts. The ghosts are always in the same
+     *  order, so they can be looked up by their index cheaply, e.g. every frame.
+     * @param index the index of the ghost, below {@code getGhostCount()}.
+     * @return the name, e.g. {@code "blinky"}.
+     */
+    public String getGhostName(int index){
+        return SNAPSHOT_ORDER[index];
+    }
+
+    /**
+     * Get the current X-position of one of the ghosts.
+     * @param index the index of the ghost, see {@code getGhostName(int)}.
+     * @return the current X-position.
+     */
+    public int getGhostX(int index){
+        return ordered_ghosts[index].x;
+    }
+
+    /**
+     * Get the current Y-position of one of the ghosts.
+     * @param index the index of the ghost, see {@code getGhostName(int)}.
+     * @return the current Y-position.
+     */
+    public int getGhostY(int index){
+        return ordered_ghosts[index].y;
+    }
+
+    /**
+     * Get the mode one of the ghosts is currently in.
+     * @param index the index of the ghost, see {@code getGhostName(int)}.
+     * @return the ordinal of the mode, see {@code getModeName(int)}.
+     */
+    public int getGhostMode(int index){
+        return ordered_ghosts[index].getIndividualMode().ordinal();
+    }
+
+    /**
+     * Get the current "globe"-mode, which the ghosts outside of the cage follow.
+     * @return the ordinal of the mode, or {@code -1} before the ghosts were
+     *  started.
+     * @see #getModeName(int)
+     */
+    public int getGlobalMode(){
+        return global_mode == null ? -1 : global_mode.ordinal();
+    }
+
+    /**
+     * Get the name of a mode, as returned by {@code getGhostMode(int)} or
+     *  {@code getGlobalMode()}.
+     * @param mode the ordinal of the mode.
+     * @return the name, e.g. {@code "CHASE"}, or {@code "NONE"} for {@code -1}.
+     */
+    public static String getModeName(int mode){
+        return mode < 0 ? "NONE" : MODES[mode].name();
+    }
+
+    /**
+     * Get a hash of the current mode, the kill-combo, the pending tasks of the
+     *  cage's timers and all ghosts in this cage.
+     * @return the combined hash of the cage and the ghosts.
+     * @see Ghost#getStateHash()
+     */
+    public long getStateHash(){
+        long hash = Zobrist.mix(getModeHash(), (last_mode == null ? -1 : last_mode.ordinal())
+                | (mode_timer_paused ? 8 : 0) | (long) kill_combo << 4);
+        hash = Zobrist.mix(hash, release_timer.getStateHash(loop));
+        hash = Zobrist.mix(hash, mode_timer.getStateHash(loop));
+        hash = Zobrist.mix(hash, freighted_timer.getStateHash(loop));
+        for (String name : SNAPSHOT_ORDER)
+            hash = Zobrist.mix(hash, ghosts.get(name).getStateHash());
+        return hash;
+    }
+
+    @Override
+    public int getSnapshotSize() {
+        int size = 1 + 2 + 4 + release_timer.getSnapshotSize()
+                + mode_timer.getSnapshotSize() + freighted_timer.getSnapshotSize();
+        for (String name : SNAPSHOT_ORDER)
+            size += ghosts.get(name).getSnapshotSize();
+        return size;
+    }
+
+    @Override
+    public void writeSnapshot(ByteBuffer out) {
+        out.put((byte) (mode_timer_paused ? 1 : 0));
+        out.put((byte) (global_mode == null ? -1 : global_mode.ordinal()));
+        out.put((byte) (last_mode == null ? -1 : last_mode.ordinal()));
+        out.putInt(kill_combo);
+        release_timer.writeSnapshot(out, loop);
+        mode_timer.writeSnapshot(out, loop);
+        freighted_timer.writeSnapshot(out, loop);
+        for (String name : SNAPSHOT_ORDER)
+            ghosts.get(name).writeSnapshot(out);
+    }
+
+    @Override
+    public void readSnapshot(ByteBuffer in) {
+        mode_timer_paused = in.get() != 0;
+        int mode = in.get();
+        global_mode = mode < 0 ? null : MODES[mode];
+        mode = in.get();
+        last_mode = mode < 0 ? null : MODES[mode];
+        kill_combo = in.getInt();
+        release_timer.readSnapshot(in, loop);
+        mode_timer.readSnapshot(in, loop);
+        freighted_timer.readSnapshot(in, loop);
+        for (String name : SNAPSHOT_ORDER)
+            ghosts.get(name).readSnapshot(in);
     }
 }
@@ -35,8 +35,8 @@ public class Clyde extends Ghost{
     /**
      * Create an instance of the orange ghost.
      */
-    protected Clyde(Pacman player) {
-        super(player);
+    protected Clyde(Cage cage, Pacman player) {
+        super(cage, player);
         target = new Point(0, 0);
         // Load the images:
         ghost_down = new ImageResource[]{
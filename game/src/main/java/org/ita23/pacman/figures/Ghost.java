@@ -4,19 +4,22 @@ import org.ita23.pacman.res.ImageResource;
 import org.ita23.pacman.game.Canvas;
 import org.ita23.pacman.game.CollusionEvent;
 import org.ita23.pacman.game.CollusionTest;
+import org.ita23.pacman.game.GameRandom;
 import org.ita23.pacman.game.MovementEvent;
 import org.ita23.pacman.game.RenderEvent;
+import org.ita23.pacman.game.SkippableEvent;
+import org.ita23.pacman.game.Snapshotable;
+import org.ita23.pacman.game.TimerEvent;
+import org.ita23.pacman.game.Zobrist;
 import org.ita23.pacman.logic.ChunkedMap;
 import org.ita23.pacman.logic.ChunkedMap.Chunk;
 import org.ita23.pacman.logic.GameState;
 import org.ita23.pacman.logic.Point;
 import org.ita23.pacman.logic.StateListener;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Random;
-import java.util.Timer;
-import java.util.TimerTask;
 
 /**
  * An abstract base-class, shared between all ghosts, which offers basic
@@ -26,16 +29,30 @@ import java.util.TimerTask;
  * @author Lukas Knuth
  * @version 1.0
  */
-abstract class Ghost implements MovementEvent, RenderEvent, CollusionEvent, StateListener {
+abstract class Ghost implements MovementEvent, RenderEvent, CollusionEvent, SkippableEvent, StateListener, TimerEvent, Snapshotable {
 
     /** The diameter of a ghost's body, e.g. his hitbox */
     private static final int HITBOX = 22;
+    /** Task to stop showing the points for eating this ghost */
+    private static final int TASK_HIDE_KILL_BONUS = 0;
+    /** The codes of the chunks a ghost reacts on, see {@code CollusionTest.getObjectCode()} */
+    private static final int DOOR_CODE = Chunk.CAGE_DOOR.ordinal();
+    private static final int JUMPER_CODE = Chunk.JUMPER.ordinal();
+    /** All directions, indexed by their ordinal */
+    private static final CollusionTest.NextDirection[] ALL_DIRECTIONS = CollusionTest.NextDirection.values();
+    /** The order in which the possible directions are evaluated (matters for ties) */
+    private static final CollusionTest.NextDirection[] DIRECTIONS = {
+            CollusionTest.NextDirection.RIGHT, CollusionTest.NextDirection.DOWN,
+            CollusionTest.NextDirection.LEFT, CollusionTest.NextDirection.UP
+    };
     
     /** The pacman-instance which is currently moving on the game-field. */
     private final Pacman player;
+    /** The cage this ghost belongs to */
+    private final Cage cage;
 
     /** The random number-generator used for the target in "frightened"-mode */
-    private final Random random;
+    private final GameRandom random;
     /** A randomly drawn X-coordinate for the frightened-mode */
     private int rand_x;
     /** A randomly drawn Y-coordinate for the frightened-mode */
@@ -61,6 +78,8 @@ abstract class Ghost implements MovementEvent, RenderEvent, CollusionEvent, Stat
             this.pixel_per_move = ppm;
         }
     }
+    /** All speed-modes, indexed by their ordinal */
+    private static final Speed[] SPEEDS = Speed.values();
     /** The current speed-mode this ghost is in */
     private Speed current_speed;
     /** The next speed-mode this ghost will be in */
@@ -70,6 +89,8 @@ abstract class Ghost implements MovementEvent, RenderEvent, CollusionEvent, Stat
     public enum Mode{
         CHASE, SCATTER, FRIGHTENED, RETURNING, BLINKING
     }
+    /** All modes, indexed by their ordinal */
+    private static final Mode[] MODES = Mode.values();
     /** The current mode this ghost instance is in */
     private Mode current_mode;
 
@@ -101,19 +122,18 @@ abstract class Ghost implements MovementEvent, RenderEvent, CollusionEvent, Stat
     /** The images to use for a returning, dead ghost - direction up */
     protected final ImageResource dead_up;
 
-    /** Counts how many ghosts have been eaten during this FRIGHTENED-mode period */
-    protected static int kill_combo = 0;
-
     /**
      * This will create a ghost with the basic implementation, which
      *  includes tracking the current player.
+     * @param cage the {@code Cage} this ghost belongs to.
      * @param player the {@code Pacman}-instance, which is currently
      *  playing the game.
      */
-    protected Ghost(Pacman player){
+    protected Ghost(Cage cage, Pacman player){
         // Initialize global stuff:
+        this.cage = cage;
         this.player = player;
-        random = new Random();
+        random = cage.getGameLoop().getRandom().split();
         isCaged = true;
         isEaten = false;
         isEatable = false;
@@ -124,7 +144,7 @@ abstract class Ghost implements MovementEvent, RenderEvent, CollusionEvent, Stat
         nextDirection = currentDirection;
         possible_directions = new ArrayList<CollusionTest.NextDirection>(4);
         // Register to the listeners:
-        GameState.INSTANCE.addStateListener(this);
+        cage.getGameState().addStateListener(this);
         // Load the general ghost-images:
         blinking = new ImageResource[]{
                 ImageResource.GHOST_BLINKING_1,
@@ -167,27 +187,22 @@ abstract class Ghost implements MovementEvent, RenderEvent, CollusionEvent, Stat
             next_speed = Speed.FAST;
             isEatable = false;
             isEaten = true;
-            kill_combo++;
-            GameState.INSTANCE.addKill(kill_combo);
+            int kill_combo = cage.nextKill();
+            cage.getGameState().addKill(kill_combo);
             // TODO Add the "eaten"-sound!
             // Show the points for a short time, then diaper them:
             kill_bonus = kill_combo*400;
             kill_location.setX(this.x);
             kill_location.setY(this.y);
-            new Timer().schedule(new TimerTask() {
-                @Override
-                public void run() {
-                    kill_bonus = 0;
-                }
-            }, 800);
+            cage.getGameLoop().getFrameScheduler().schedule(this, TASK_HIDE_KILL_BONUS, 800);
         } else if (current_mode != Mode.RETURNING && gotPlayer(x, y)){ // Check if we got pacman:
-            GameState.INSTANCE.removeLive();
+            cage.getGameState().removeLive();
             // Reset the rest:
             currentDirection = CollusionTest.NextDirection.UP;
             nextDirection = currentDirection;
             possible_directions.clear();
             next_speed = Speed.NORMAL;
-        } else if (current_mode == Mode.RETURNING && tester.checkCollusion(x, y, ChunkedMap.Chunk.CAGE_DOOR)){
+        } else if (current_mode == Mode.RETURNING && tester.getObjectCode(x, y) == DOOR_CODE){
             // Back home, change back:
             isEaten = false;
             isEatable = false;
@@ -195,15 +210,8 @@ abstract class Ghost implements MovementEvent, RenderEvent, CollusionEvent, Stat
             nextDirection = currentDirection.opposite();
             next_speed = Speed.NORMAL;
         }
-        // Check if we went into the "jumper":
-        if ((this.y - GameState.MAP_SPACER) / Chunk.CHUNK_SIZE == 14 &&
-                (this.x <= Chunk.CHUNK_SIZE*4 || this.x >= Chunk.CHUNK_SIZE*24)){
-            // In the jumper, slow it down:
-            next_speed = Speed.SLOW;
-        } else if ((current_mode != Mode.FRIGHTENED && current_mode != Mode.BLINKING) && current_mode != Mode.RETURNING) {
-            next_speed = Speed.NORMAL;
-        }
-        if (tester.checkCollusion(this.x, this.y, ChunkedMap.Chunk.JUMPER)){
+        adjustSpeed();
+        if (tester.getObjectCode(this.x, this.y) == JUMPER_CODE){
             if (this.x <= ChunkedMap.Chunk.CHUNK_SIZE-3){ // Went into the left jumper, so go to the right:
                 this.x = ChunkedMap.Chunk.CHUNK_SIZE * 27;
             } else {
@@ -232,27 +240,29 @@ abstract class Ghost implements MovementEvent, RenderEvent, CollusionEvent, Stat
                 x_next = this.x+ ChunkedMap.Chunk.CHUNK_SIZE;
         }
         // Find the possible directions:
-        possible_directions.clear();
-        if (!tester.checkNextCollusion(x_next, y_next, Chunk.BLOCK, CollusionTest.NextDirection.RIGHT)){
-            // Exclude the opposite direction:
-            if (currentDirection != CollusionTest.NextDirection.LEFT)
-                possible_directions.add(CollusionTest.NextDirection.RIGHT);
+        int exits = tester.getOpenExits(x_next, y_next);
+        int doors = tester.getDoorExits(x_next, y_next);
+        if (current_mode != Mode.RETURNING){
+            // Using the cage-door when not in RETURNING-mode is not allowed!
+            doors &= ~CollusionTest.NextDirection.DOWN.getMask();
         }
-        if (!tester.checkNextCollusion(x_next, y_next, Chunk.BLOCK, CollusionTest.NextDirection.DOWN)){
-            // When returning, going through the door is okay:
-            if (currentDirection != CollusionTest.NextDirection.UP)
-                if (tester.checkNextCollusion(x_next, y_next, Chunk.CAGE_DOOR, CollusionTest.NextDirection.DOWN)
-                        && current_mode != Mode.RETURNING){
-                    // Using the cage-door when not in RETURNING-mode is not allowed!
-                } else possible_directions.add(CollusionTest.NextDirection.DOWN);
+        exits |= doors;
+        // Exclude the opposite direction:
+        exits &= ~currentDirection.opposite().getMask();
+        possible_directions.clear();
+        if (Integer.bitCount(exits) == 1){
+            // Only one way to go (a corridor), no need to look for the target:
+            nextDirection = ALL_DIRECTIONS[Integer.numberOfTrailingZeros(exits)];
+            return;
         }
-        if (!tester.checkNextCollusion(x_next, y_next, Chunk.BLOCK, CollusionTest.NextDirection.LEFT)){
-            if (currentDirection != CollusionTest.NextDirection.RIGHT)
-                possible_directions.add(CollusionTest.NextDirection.LEFT);
+        for (CollusionTest.NextDirection next : DIRECTIONS){
+            if ((exits & next.getMask()) != 0)
+                possible_directions.add(next);
         }
-        if (!tester.checkNextCollusion(x_next, y_next, Chunk.BLOCK, CollusionTest.NextDirection.UP)){
-            if (currentDirection != CollusionTest.NextDirection.DOWN)
-                possible_directions.add(CollusionTest.NextDirection.UP);
+        // Randomly generate a target for every decision:
+        if (current_mode == Mode.FRIGHTENED || current_mode == Mode.BLINKING){
+            rand_x = random.nextInt(28) * ChunkedMap.Chunk.CHUNK_SIZE;
+            rand_y = random.nextInt(31) * ChunkedMap.Chunk.CHUNK_SIZE;
         }
         // Check for pacman:
         int shortest = Integer.MAX_VALUE;
@@ -279,6 +289,27 @@ abstract class Ghost implements MovementEvent, RenderEvent, CollusionEvent, Stat
         }
     }
 
+    /**
+     * Slows the ghost down while it's in the "jumper", and speeds it up again after.
+     */
+    private void adjustSpeed(){
+        // Check if we went into the "jumper":
+        if ((this.y - GameState.MAP_SPACER) / Chunk.CHUNK_SIZE == 14 &&
+                (this.x <= Chunk.CHUNK_SIZE*4 || this.x >= Chunk.CHUNK_SIZE*24)){
+            // In the jumper, slow it down:
+            next_speed = Speed.SLOW;
+        } else if ((current_mode != Mode.FRIGHTENED && current_mode != Mode.BLINKING) && current_mode != Mode.RETURNING) {
+            next_speed = Speed.NORMAL;
+        }
+    }
+
+    @Override
+    public void timerExpired(int task) {
+        if (task == TASK_HIDE_KILL_BONUS){
+            kill_bonus = 0;
+        }
+    }
+
     @Override
     public void move() {
         if (isCaged()){
@@ -287,11 +318,6 @@ abstract class Ghost implements MovementEvent, RenderEvent, CollusionEvent, Stat
             else if (this.y < (13*Chunk.CHUNK_SIZE + GameState.MAP_SPACER +6))
                 nextDirection = CollusionTest.NextDirection.DOWN;
         }
-        // Randomly generate a target for every new "step".
-        if (current_mode == Mode.FRIGHTENED || current_mode == Mode.BLINKING){
-            rand_x = random.nextInt(28) * ChunkedMap.Chunk.CHUNK_SIZE;
-            rand_y = random.nextInt(31) * ChunkedMap.Chunk.CHUNK_SIZE;
-        }
         // Move the character:
         switch (currentDirection){
             case UP:
@@ -321,6 +347,55 @@ abstract class Ghost implements MovementEvent, RenderEvent, CollusionEvent, Stat
         }
     }
 
+    @Override
+    public int getSkippableFrames(CollusionTest tester) {
+        int step = current_speed.pixel_per_move;
+        int moved = pixel_moved_count;
+        int frames = 0;
+        // The next direction is only looked for when starting a frame on the edge of a chunk:
+        while (moved % ChunkedMap.Chunk.CHUNK_SIZE != 0 && frames < ChunkedMap.Chunk.CHUNK_SIZE){
+            moved += step;
+            frames++;
+        }
+        if (isCaged()){
+            if (nextDirection == null || current_mode == Mode.RETURNING) return 0;
+            // In the cage, pacman is looked for on every frame. Only skip the frames in which
+            //  he can't possibly get close enough, even when both head straight for each other:
+            double gap = distanceToPlayer(x, y) - (Pacman.HITBOX/2 + Ghost.HITBOX/2);
+            frames = Math.min(frames, (int) Math.max(0, gap / (step + Pacman.MOVE_PER_PAINT)));
+        }
+        return frames;
+    }
+
+    @Override
+    public void skipFrames(int frames) {
+        if (isCaged()){
+            // Bouncing around in the cage, simulate it:
+            for (int i = 0; i < frames; i++){
+                adjustSpeed();
+                move();
+            }
+            return;
+        }
+        // Move straight on, the last frame might reach the next chunk and turn:
+        int pixels = (frames - 1) * current_speed.pixel_per_move;
+        switch (currentDirection){
+            case UP:
+                this.y -= pixels;
+                break;
+            case RIGHT:
+                this.x += pixels;
+                break;
+            case DOWN:
+                this.y += pixels;
+                break;
+            case LEFT:
+                this.x -= pixels;
+        }
+        pixel_moved_count += pixels;
+        move();
+    }
+
     /** The variable used to switch between the two possible images of a direction */
     private int image_count;
     /** This counter is used to make the ghost blink at the end of frightened mode */
@@ -373,6 +448,86 @@ abstract class Ghost implements MovementEvent, RenderEvent, CollusionEvent, Stat
         }
     }
 
+    /**
+     * Get a hash of everything that decides how the ghost continues: it's
+     *  position, directions, speeds, modes, random target and the state of it's
+     *  random numbers. The animation and the shown kill-bonus are left out, they
+     *  are only drawn. It only mixes a handful of values, so it's cheap to call
+     *  every frame.
+     * @return the hash of this ghost.
+     * @see Zobrist
+     */
+    public long getStateHash(){
+        long hash = Zobrist.mix(x, y);
+        hash = Zobrist.mix(hash, pixel_moved_count);
+        hash = Zobrist.mix(hash, currentDirection.ordinal() | current_mode.ordinal() << 2
+                | current_speed.ordinal() << 5 | (isCaged ? 256 : 0) | (isEaten ? 512 : 0)
+                | (isEatable ? 1024 : 0) | (start_point != null ? 2048 : 0)
+                | (nextDirection == null ? 7 : nextDirection.ordinal()) << 12
+                | (next_mode == null ? 7 : next_mode.ordinal()) << 15
+                | next_speed.ordinal() << 18);
+        hash = Zobrist.mix(hash, (long) rand_x << 32 | (rand_y & 0xFFFFFFFFL));
+        return Zobrist.mix(hash, random.getStateHash());
+    }
+
+    @Override
+    public int getSnapshotSize() {
+        return 10 * 4 + 1 + 6 + random.getSnapshotSize();
+    }
+
+    @Override
+    public void writeSnapshot(ByteBuffer out) {
+        out.putInt(x);
+        out.putInt(y);
+        out.putInt(pixel_moved_count);
+        out.putInt(rand_x);
+        out.putInt(rand_y);
+        out.putInt(kill_bonus);
+        out.putInt(kill_location.getX());
+        out.putInt(kill_location.getY());
+        out.putInt(image_count);
+        out.putInt(blink_count);
+        // The start-point is only known after the ghost was started once:
+        out.put((byte) ((isCaged ? 1 : 0) | (isEaten ? 2 : 0) | (isEatable ? 4 : 0)
+                | (start_point != null ? 8 : 0)));
+        out.put((byte) current_speed.ordinal());
+        out.put((byte) next_speed.ordinal());
+        out.put((byte) current_mode.ordinal());
+        out.put((byte) (next_mode == null ? -1 : next_mode.ordinal()));
+        out.put((byte) currentDirection.ordinal());
+        out.put((byte) (nextDirection == null ? -1 : nextDirection.ordinal()));
+        random.writeSnapshot(out);
+    }
+
+    @Override
+    public void readSnapshot(ByteBuffer in) {
+        x = in.getInt();
+        y = in.getInt();
+        pixel_moved_count = in.getInt();
+        rand_x = in.getInt();
+        rand_y = in.getInt();
+        kill_bonus = in.getInt();
+        kill_location.setX(in.getInt());
+        kill_location.setY(in.getInt());
+        image_count = in.getInt();
+        blink_count = in.getInt();
+        byte flags = in.get();
+        isCaged = (flags & 1) != 0;
+        isEaten = (flags & 2) != 0;
+        isEatable = (flags & 4) != 0;
+        current_speed = SPEEDS[in.get()];
+        next_speed = SPEEDS[in.get()];
+        current_mode = MODES[in.get()];
+        int mode = in.get();
+        next_mode = mode < 0 ? null : MODES[mode];
+        currentDirection = ALL_DIRECTIONS[in.get()];
+        int direction = in.get();
+        nextDirection = direction < 0 ? null : ALL_DIRECTIONS[direction];
+        random.readSnapshot(in);
+        // Ghosts are always started from the same point, in front of the cage:
+        start_point = (flags & 8) != 0 ? cage.getGhostStart() : null;
+    }
+
     /**
      * This will force this ghost-instance to turn around at the next possible point in
      *  time.</p>
@@ -413,7 +568,7 @@ abstract class Ghost implements MovementEvent, RenderEvent, CollusionEvent, Stat
             // Slow down the ghost:
             next_speed = Speed.SLOW;
             isEatable = true;
-            kill_combo = 0;
+            cage.resetKills();
             // Store the last mode:
             next_mode = current_mode;
         }
@@ -591,13 +746,23 @@ abstract class Ghost implements MovementEvent, RenderEvent, CollusionEvent, Stat
      */
     // TODO Maybe make a blog-post about this...
     private boolean gotPlayer(int x, int y){
+        // Check if we hit:
+        if (distanceToPlayer(x, y) < (Pacman.HITBOX/2 + Ghost.HITBOX/2)) return true;
+        else return false;
+    }
+
+    /**
+     * Calculates the distance between the center of pacman and the center of a
+     *  ghost on the given position.
+     * @param x the X-coordinate of the ghost.
+     * @param y the Y-coordinate of the ghost.
+     * @return the distance in pixels.
+     */
+    private double distanceToPlayer(int x, int y){
         // Calculate the third piece of the triangle:
         int a_site = (player.getX()+Pacman.HITBOX/2) - (x+Ghost.HITBOX/2);
         int b_site = (player.getY()+Pacman.HITBOX/2) - (y+Ghost.HITBOX/2);
         // Calculate the distance between player and ghost:
-        double distance = Math.sqrt((a_site*a_site)+(b_site*b_site));
-        // Check if we hit:
-        if (distance < (Pacman.HITBOX/2 + Ghost.HITBOX/2)) return true;
-        else return false;
+        return Math.sqrt((a_site*a_site)+(b_site*b_site));
     }
 }
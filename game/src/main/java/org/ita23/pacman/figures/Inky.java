@@ -38,8 +38,8 @@ public class Inky extends Ghost{
      * @param blinky the current instance of the red ghost. This is needed
      *  for targeting-purposes, as explained in the above linked dossier.
      */
-    protected Inky(Pacman player, Blinky blinky) {
-        super(player);
+    protected Inky(Cage cage, Pacman player, Blinky blinky) {
+        super(cage, player);
         target = new Point(0, 0);
         this.blinky = blinky;
         // Load the images:
@@ -0,0 +1,17 @@
+package org.ita23.pacman.figures;
+
+/**
+ * This listener will be notified, when the ghosts change their mode, e.g.
+ *  from scattering to chasing pacman or when they get frightened.</p>
+ * The listener can be registered to the {@code Cage}-class.
+ * @author Lukas Knuth
+ * @version 1.0
+ */
+public interface ModeListener {
+
+    /**
+     * This method will be called, when the ghosts changed their mode.
+     * @param mode the name of the new mode, e.g. {@code "CHASE"}.
+     */
+    public void modeChanged(String mode);
+}
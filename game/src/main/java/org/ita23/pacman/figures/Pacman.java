@@ -10,26 +10,34 @@ import org.ita23.pacman.logic.GameState;
 import org.ita23.pacman.logic.Point;
 import org.ita23.pacman.logic.StateListener;
 
+import java.nio.ByteBuffer;
+
 /**
  * The main-character of this game.
  * @author Lukas Knuth
  * @author Fabain Bottler
  * @version 1.0
  */
-public class Pacman implements RenderEvent, InputEvent, CollusionEvent, MovementEvent, StateListener {
+public class Pacman implements RenderEvent, InputEvent, CollusionEvent, MovementEvent, SkippableEvent, StateListener, Snapshotable {
 
     /** The count of degrees needed to consider the moth "fully opened" */
     private final static int MOUTH_MAX = 75;
     /** The count of degrees needed to consider the moth "fully closed" */
     private final static int MOUTH_MIN = 0;
     /** The pixels-per-repaint that pacman moves */
-    private final static int MOVE_PER_PAINT = 2; // TODO Slower when not eating!
+    final static int MOVE_PER_PAINT = 2; // TODO Slower when not eating!
     /** The speed indicating how fast the mouth moves. The higher, the faster! */
     private final static int MOUTH_SPEED = 10;
     /** The diameter of pacman's body, e.g. his hitbox */
     public final static int HITBOX = 28;
     
     private final static int ZINDEX = 1;
+
+    /** The codes of the chunks pacman reacts on, see {@code CollusionTest.getObjectCode()} */
+    private final static int JUMPER_CODE = Chunk.JUMPER.ordinal();
+    private final static int POINT_CODE = Chunk.POINT.ordinal();
+    private final static int BALL_CODE = Chunk.BALL.ordinal();
+    private final static int FRUIT_CODE = Chunk.FRUIT.ordinal();
     
     /** The color of pacmans body */
     public static final Color BODY_COLOR = new Color(255, 255, 87);
@@ -83,6 +91,8 @@ public class Pacman implements RenderEvent, InputEvent, CollusionEvent, Movement
             }
         }
     }
+    /** All facing-directions, indexed by their ordinal */
+    private static final FacingDirection[] DIRECTIONS = FacingDirection.values();
     /** The current direction pacman looks */
     private FacingDirection current_direction;
     /** The direction pacman should move next possible turn */
@@ -90,14 +100,24 @@ public class Pacman implements RenderEvent, InputEvent, CollusionEvent, Movement
     /** Weather a direction-change is possible without running into a wall */
     private boolean direction_change_possible;
 
+    /** The state of the game pacman is playing in */
+    private final GameState state;
+    /** Plays the sounds of the game pacman is playing in */
+    private final SoundManager sound;
+
     /**
      * Create a new Pacman-figure with an animated mouth.
+     * @param point the point pacman starts on.
+     * @param state the state of the game pacman is playing in.
+     * @param sound plays the sounds of the game.
      */
-    public Pacman(Point point){
+    public Pacman(Point point, GameState state, SoundManager sound){
         this.start_point = point;
+        this.state = state;
+        this.sound = sound;
         reset();
         // Register self to game-state listener:
-        GameState.INSTANCE.addStateListener(this);
+        state.addStateListener(this);
     }
     
     public int getZIndex(){
@@ -133,7 +153,52 @@ public class Pacman implements RenderEvent, InputEvent, CollusionEvent, Movement
                     pixel_moved_count += MOVE_PER_PAINT;
                     break;
             }
-        // Animate the mouth:
+        animateMouth();
+    }
+
+    @Override
+    public int getSkippableFrames(CollusionTest tester) {
+        if (isDieing) return 0;
+        if (has_collided){
+            // Standing in front of a wall, nothing changes until the input does. Unless the
+            //  map was just filled up again, and there is something to eat:
+            int food = tester.getObjectCode(this.x, this.y);
+            if (food == POINT_CODE || food == BALL_CODE || food == FRUIT_CODE) return 0;
+            return Integer.MAX_VALUE;
+        }
+        // Pacman only decides where to go on the edge of a chunk:
+        int left = ChunkedMap.Chunk.CHUNK_SIZE - pixel_moved_count % ChunkedMap.Chunk.CHUNK_SIZE;
+        if (left == ChunkedMap.Chunk.CHUNK_SIZE) return 0;
+        return (left + MOVE_PER_PAINT - 1) / MOVE_PER_PAINT;
+    }
+
+    @Override
+    public void skipFrames(int frames) {
+        if (has_collided) return;
+        int pixels = frames * MOVE_PER_PAINT;
+        switch (current_direction){
+            case UP:
+                this.y -= pixels;
+                break;
+            case RIGHT:
+                this.x += pixels;
+                break;
+            case DOWN:
+                this.y += pixels;
+                break;
+            case LEFT:
+                this.x -= pixels;
+                break;
+        }
+        pixel_moved_count += pixels;
+        for (int i = 0; i < frames; i++)
+            animateMouth();
+    }
+
+    /**
+     * Advances the "open-close" animation of the mouth by one frame.
+     */
+    private void animateMouth(){
         if (mouth_degrees < MOUTH_MAX && !mouth_closing){
             // Mouth is opening.
             if (!has_collided) // When standing, don't eat!
@@ -161,7 +226,14 @@ public class Pacman implements RenderEvent, InputEvent, CollusionEvent, Movement
                 calculateMouthSpacer(mouth_degrees)+current_direction.degrees,
                 mouth_degrees
         );
-        // Death-animation:
+    }
+
+    /**
+     * Advances the death-animation by one frame, if pacman is currently dieing.</p>
+     * This is game-logic (pacman is reset at the end of the animation), so it must
+     *  not live in {@code render()}, which is skipped when running headless.
+     */
+    private void animateDeath(){
         if (isDieing){
             // TODO Add the "splash" at the end of the animation!
             mouth_degrees += MOUTH_SPEED+2;
@@ -191,7 +263,7 @@ public class Pacman implements RenderEvent, InputEvent, CollusionEvent, Movement
     public void detectCollusion(CollusionTest tester) {
         if (pixel_moved_count % ChunkedMap.Chunk.CHUNK_SIZE != 0) return;
         // Check if we went into the "jumper":
-        if (tester.checkCollusion(this.x, this.y, ChunkedMap.Chunk.JUMPER)){
+        if (tester.getObjectCode(this.x, this.y) == JUMPER_CODE){
             if (this.x <= Chunk.CHUNK_SIZE-3){ // Went into the left jumper, so go to the right:
                 this.x = Chunk.CHUNK_SIZE * 27;
             } else {
@@ -199,46 +271,42 @@ public class Pacman implements RenderEvent, InputEvent, CollusionEvent, Movement
             }
             return;
         }
-        // Check if we ran against a block (and therefore can't move):
-        if (tester.checkNextCollusion(this.x, this.y,
-                Chunk.BLOCK, current_direction.convertToNextDirection())
-            || tester.checkNextCollusion(this.x, this.y,
-                Chunk.CAGE_DOOR, current_direction.convertToNextDirection())){
+        // Check if we ran against a block or door (and therefore can't move):
+        int exits = tester.getOpenExits(this.x, this.y);
+        if ((exits & current_direction.convertToNextDirection().getMask()) == 0){
             has_collided = true;
         }
-        if (tester.checkNextCollusion(this.x, this.y,
-                Chunk.BLOCK, next_direction.convertToNextDirection())
-            || tester.checkNextCollusion(this.x, this.y,
-                Chunk.CAGE_DOOR, next_direction.convertToNextDirection())){
+        if ((exits & next_direction.convertToNextDirection().getMask()) == 0){
             direction_change_possible = false;
         } else {
             direction_change_possible = true;
             has_collided = false;
         }
         // Check if we ate something:
-        if (tester.checkCollusion(this.x, this.y, Chunk.POINT)){
-            SoundManager.INSTANCE.loop(SoundResource.EAT);
-            GameState.INSTANCE.addScore(GameState.Food.POINT);
-        } else if (tester.checkCollusion(this.x, this.y, Chunk.BALL)){
-            GameState.INSTANCE.addScore(GameState.Food.BALL);
-        } else if (tester.checkCollusion(this.x, this.y, Chunk.FRUIT)){
-            GameState.INSTANCE.addScore(GameState.Food.BONUS);
-            SoundManager.INSTANCE.play(SoundResource.EAT_FRUIT);
+        int food = tester.consume(this.x, this.y);
+        if (food == POINT_CODE){
+            sound.loop(SoundResource.EAT);
+            state.addScore(GameState.Food.POINT);
+        } else if (food == BALL_CODE){
+            state.addScore(GameState.Food.BALL);
+        } else if (food == FRUIT_CODE){
+            state.addScore(GameState.Food.BONUS);
+            sound.play(SoundResource.EAT_FRUIT);
         } else {
-            SoundManager.INSTANCE.stop(SoundResource.EAT);
+            sound.stop(SoundResource.EAT);
         }
     }
 
     @Override
-    public void stateChanged(States state) {
+    public void stateChanged(States new_state) {
         // Stop the eating sound!
-        SoundManager.INSTANCE.stop(SoundResource.EAT);
+        sound.stop(SoundResource.EAT);
         // Handle the specific cases:
-        if (state == States.LIVE_LOST){
+        if (new_state == States.LIVE_LOST){
             // Kick off the death-animation:
             isDieing = true;
             mouth_degrees = 0;
-        } else if (state == States.ROUND_WON || state == States.GAME_OVER){
+        } else if (new_state == States.ROUND_WON || new_state == States.GAME_OVER){
             reset();
             // TODO Wait for the melody to finish...
         }
@@ -246,6 +314,8 @@ public class Pacman implements RenderEvent, InputEvent, CollusionEvent, Movement
 
     @Override
     public void joystickInput(JoystickState state) {
+        // The input-phase also runs while the game is frozen, just like rendering did:
+        animateDeath();
         has_collided = false;
         switch (state) {
             case InputEvent.JoystickState.UP:
@@ -265,6 +335,52 @@ public class Pacman implements RenderEvent, InputEvent, CollusionEvent, Movement
         }
     }
 
+    /**
+     * Get a hash of pacman's current position, direction and state. It only
+     *  mixes a handful of values, so it's cheap to call every frame.
+     * @return the hash of pacman.
+     * @see Zobrist
+     */
+    public long getStateHash(){
+        long hash = Zobrist.mix(x, y);
+        hash = Zobrist.mix(hash, pixel_moved_count);
+        hash = Zobrist.mix(hash, current_direction.ordinal() | next_direction.ordinal() << 2
+                | (has_collided ? 16 : 0) | (isDieing ? 32 : 0) | (direction_change_possible ? 64 : 0));
+        return hash;
+    }
+
+    @Override
+    public int getSnapshotSize() {
+        return 4 * 4 + 1 + 2;
+    }
+
+    @Override
+    public void writeSnapshot(ByteBuffer out) {
+        out.putInt(x);
+        out.putInt(y);
+        out.putInt(pixel_moved_count);
+        out.putInt(mouth_degrees);
+        out.put((byte) ((has_collided ? 1 : 0) | (isDieing ? 2 : 0)
+                | (mouth_closing ? 4 : 0) | (direction_change_possible ? 8 : 0)));
+        out.put((byte) current_direction.ordinal());
+        out.put((byte) next_direction.ordinal());
+    }
+
+    @Override
+    public void readSnapshot(ByteBuffer in) {
+        x = in.getInt();
+        y = in.getInt();
+        pixel_moved_count = in.getInt();
+        mouth_degrees = in.getInt();
+        byte flags = in.get();
+        has_collided = (flags & 1) != 0;
+        isDieing = (flags & 2) != 0;
+        mouth_closing = (flags & 4) != 0;
+        direction_change_possible = (flags & 8) != 0;
+        current_direction = DIRECTIONS[in.get()];
+        next_direction = DIRECTIONS[in.get()];
+    }
+
     /**
      * This will reset pacman to hist start-position, set his default
      *  direction and mouth opening, etc.
@@ -286,7 +402,7 @@ public class Pacman implements RenderEvent, InputEvent, CollusionEvent, Movement
      * Get the current X-position of this {@code Pacman}-instance.
      * @return the current X-position.
      */
-    int getX(){
+    public int getX(){
         return this.x;
     }
 
@@ -294,7 +410,7 @@ public class Pacman implements RenderEvent, InputEvent, CollusionEvent, Movement
      * Get the current Y-position of this {@code Pacman}-instance.
      * @return the current Y-position.
      */
-    int getY(){
+    public int getY(){
         return this.y;
     }
 
@@ -34,8 +34,8 @@ public class Pinky extends Ghost {
     /**
      * Create a new instance of the pink ghost.
      */
-    protected Pinky(Pacman player) {
-        super(player);
+    protected Pinky(Cage cage, Pacman player) {
+        super(cage, player);
         target = new Point(0, 0);
         // Load the images:
         ghost_down = new ImageResource[]{
@@ -45,6 +45,16 @@ public interface CollusionTest {
     public enum NextDirection{
         UP, RIGHT, DOWN, LEFT;
 
+        /**
+         * Returns the bit representing this direction in the masks returned
+         *  by the {@code getOpenExits()}-method.
+         * @return the bit for this direction.
+         * @see CollusionTest#getOpenExits(int, int)
+         */
+        public int getMask(){
+            return 1 << ordinal();
+        }
+
         /**
          * This will return the opposite direction of this direction.
          * @return the opposite direction.
@@ -80,4 +90,47 @@ public interface CollusionTest {
      */
     public <T> boolean checkNextCollusion(int you_x, int you_y, T object, NextDirection next);
 
+    /**
+     * Returns the primitive code of the object the figure is currently on.
+     *  This is the allocation-free alternative to the {@code checkCollusion()}-
+     *  method, to be used on hot paths.</p>
+     * What the codes mean is defined by the {@code Map}-implementation.
+     * @param you_x the X-position of the figure.
+     * @param you_y the Y-position of the figure.
+     * @return the code of the object on the given position.
+     */
+    public int getObjectCode(int you_x, int you_y);
+
+    /**
+     * Returns all directions in which the figure could move on from it's
+     *  current position, without running into a block or through a door.
+     * @param you_x the X-position of the figure.
+     * @param you_y the Y-position of the figure.
+     * @return a mask of all open directions, combining the bits from
+     *  {@code NextDirection.getMask()}.
+     * @see NextDirection#getMask()
+     */
+    public int getOpenExits(int you_x, int you_y);
+
+    /**
+     * Returns all directions in which the figure would move through a door,
+     *  which only some figures are allowed to pass.
+     * @param you_x the X-position of the figure.
+     * @param you_y the Y-position of the figure.
+     * @return a mask of all directions leading through a door, combining the
+     *  bits from {@code NextDirection.getMask()}.
+     * @see #getOpenExits(int, int)
+     */
+    public int getDoorExits(int you_x, int you_y);
+
+    /**
+     * Eats anything eatable on the figures current position in one step.
+     * @param you_x the X-position of the figure.
+     * @param you_y the Y-position of the figure.
+     * @return the code of the object on the given position, before it was
+     *  eaten.
+     * @see #getObjectCode(int, int)
+     */
+    public int consume(int you_x, int you_y);
+
 }
@@ -0,0 +1,184 @@
+package org.ita23.pacman.game;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Measures how long the individual events registered with a {@code GameLoop}
+ *  take, to find out which of them are expensive.</p>
+ * Measuring every call would cost more than most events do themselves, so only
+ *  every n-th frame is sampled. In a sampled frame, every call of every event is
+ *  measured. The time spent ticking the game-time {@code Scheduler} (e.g. the
+ *  tasks of all {@code TimerEvent}s) is measured like an event of the
+ *  movement-phase.</p>
+ * The report lists the events by the time they took, grouped by their phase,
+ *  their class and (for {@code RenderEvent}s) their z-index.
+ * @author Lukas Knuth
+ * @version 1.0
+ * @see GameLoop#setEventProfiler(EventProfiler)
+ */
+public class EventProfiler {
+
+    /** The phases, which have events to measure */
+    private static final int PHASES = FrameTimings.RENDER + 1;
+
+    /** Sample one frame out of this many */
+    private final int sample_interval;
+    /** Counts the frames until the next sampled one */
+    private int countdown;
+    /** The number of sampled frames */
+    private long sampled_frames;
+    /** The nanoseconds every event took in all sampled frames, by phase and index */
+    private final long[][] nanos;
+    /** The number of measured calls of every event, by phase and index */
+    private final long[][] calls;
+    /** The loop, which registered the measured events */
+    private GameLoop loop;
+
+    /**
+     * Creates a new profiler.
+     * @param sample_interval sample one frame out of this many, e.g. {@code 1}
+     *  to sample every frame.
+     * @throws IllegalArgumentException if the interval is not positive.
+     */
+    public EventProfiler(int sample_interval){
+        if (sample_interval < 1)
+            throw new IllegalArgumentException("Sample-interval must be positive, was "+sample_interval);
+        this.sample_interval = sample_interval;
+        nanos = new long[PHASES][0];
+        calls = new long[PHASES][0];
+    }
+
+    /**
+     * Connects this profiler to the loop, whose events it measures.
+     * @throws IllegalStateException if the profiler was already set on another loop.
+     */
+    void attach(GameLoop loop){
+        if (this.loop != null && this.loop != loop)
+            throw new IllegalStateException("Profiler is already measuring another game");
+        this.loop = loop;
+    }
+
+    /**
+     * Called once per frame.
+     * @return weather this frame should be sampled.
+     */
+    boolean sampleFrame(){
+        if (--countdown > 0)
+            return false;
+        countdown = sample_interval;
+        sampled_frames++;
+        return true;
+    }
+
+    /**
+     * Records a single, measured call of an event.
+     * @param phase the phase of the event, e.g. {@code FrameTimings.RENDER}.
+     * @param index the index of the event in it's phase.
+     * @param duration the nanoseconds the call took.
+     */
+    void record(int phase, int index, long duration){
+        if (index >= nanos[phase].length){
+            long[] grown_nanos = new long[index + 8];
+            long[] grown_calls = new long[index + 8];
+            System.arraycopy(nanos[phase], 0, grown_nanos, 0, nanos[phase].length);
+            System.arraycopy(calls[phase], 0, grown_calls, 0, calls[phase].length);
+            nanos[phase] = grown_nanos;
+            calls[phase] = grown_calls;
+        }
+        nanos[phase][index] += duration;
+        calls[phase][index]++;
+    }
+
+    /**
+     * Removes all measurements.
+     */
+    public void reset(){
+        for (int phase = 0; phase < PHASES; phase++){
+            nanos[phase] = new long[0];
+            calls[phase] = new long[0];
+        }
+        sampled_frames = 0;
+    }
+
+    /**
+     * Get the number of frames which were sampled so far.
+     * @return the number of sampled frames.
+     */
+    public long getSampledFrames(){
+        return sampled_frames;
+    }
+
+    /**
+     * Lists the most expensive events, one per line. For each one, it's share
+     *  of the measured time, it's average time per frame and per call are given.
+     * @param count the maximum number of events to list.
+     * @return the report.
+     */
+    public String getReport(int count){
+        List<Entry> entries = collect();
+        long total = 0;
+        for (Entry entry : entries)
+            total += entry.nanos;
+        StringBuilder report = new StringBuilder();
+        report.append(sampled_frames).append(" sampled frames, one of every ")
+                .append(sample_interval).append('\n');
+        for (int i = 0; i < Math.min(count, entries.size()); i++){
+            Entry entry = entries.get(i);
+            report.append(i + 1).append(". ").append(entry.key)
+                    .append(": ").append(entry.nanos * 1000 / Math.max(total, 1) / 10.0).append("%, ")
+                    .append(entry.nanos / Math.max(sampled_frames, 1)).append("ns/frame, ")
+                    .append(entry.nanos / Math.max(entry.calls, 1)).append("ns/call\n");
+        }
+        return report.toString();
+    }
+
+    /**
+     * Sums up the measurements of all events with the same key, most expensive
+     *  first.
+     */
+    private List<Entry> collect(){
+        List<Entry> entries = new ArrayList<Entry>();
+        if (loop == null)
+            return entries;
+        for (int phase = 0; phase < PHASES; phase++){
+            long[] phase_nanos = nanos[phase];
+            long[] phase_calls = calls[phase];
+            for (int index = 0; index < phase_nanos.length; index++){
+                if (phase_calls[index] == 0) continue;
+                String key = FrameTimings.getName(phase)+" "+loop.describeEvent(phase, index);
+                Entry entry = null;
+                for (Entry existing : entries)
+                    if (existing.key.equals(key)) entry = existing;
+                if (entry == null){
+                    entry = new Entry(key);
+                    entries.add(entry);
+                }
+                entry.nanos += phase_nanos[index];
+                entry.calls += phase_calls[index];
+            }
+        }
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry a, Entry b) {
+                return Long.compare(b.nanos, a.nanos);
+            }
+        });
+        return entries;
+    }
+
+    /**
+     * The summed up measurements of all events with the same key.
+     */
+    private static class Entry {
+        private final String key;
+        private long nanos;
+        private long calls;
+
+        private Entry(String key){
+            this.key = key;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package org.ita23.pacman.game;
+
+/**
+ * Measures how long the phases of every frame take, to find out where the
+ *  time of a slow frame went.</p>
+ * Set it on the {@code GameLoop} to enable the measuring. Every phase has it's
+ *  own {@code TimeHistogram}, plus one for the whole frame. The movement-phase
+ *  includes ticking the schedulers, the render-phase is only measured for frames
+ *  which are actually rendered.</p>
+ * To pass the durations of every frame on, e.g. to a profiler, override
+ *  {@code frameRecorded()}.
+ * @author Lukas Knuth
+ * @version 1.0
+ * @see GameLoop#setFrameTimings(FrameTimings)
+ */
+public class FrameTimings {
+
+    /** The phase calling all {@code InputEvent}s */
+    public static final int INPUT = 0;
+    /** The phase calling all {@code CollusionEvent}s */
+    public static final int COLLUSION = 1;
+    /** The phase calling all {@code MovementEvent}s and the schedulers */
+    public static final int MOVEMENT = 2;
+    /** The phase calling all {@code RenderEvent}s */
+    public static final int RENDER = 3;
+    /** The whole frame, from the first to the last phase */
+    public static final int FRAME = 4;
+
+    /** The names of the phases, indexed by their constant */
+    private static final String[] NAMES = {"input", "collusion", "movement", "render", "frame"};
+
+    /** The histograms of all phases, indexed by their constant */
+    private final TimeHistogram[] histograms;
+    /** The durations of the last measured frame, indexed by the phases */
+    private final long[] last;
+
+    /**
+     * Creates new, empty timings.
+     */
+    public FrameTimings(){
+        histograms = new TimeHistogram[NAMES.length];
+        for (int i = 0; i < NAMES.length; i++)
+            histograms[i] = new TimeHistogram();
+        last = new long[NAMES.length];
+    }
+
+    /**
+     * Records the durations of a single frame.
+     * @param input the nanoseconds spent in the input-phase.
+     * @param collusion the nanoseconds spent in the collusion-phase.
+     * @param movement the nanoseconds spent in the movement-phase.
+     * @param render the nanoseconds spent in the render-phase, or {@code -1}
+     *  if the frame wasn't rendered.
+     */
+    void record(long input, long collusion, long movement, long render){
+        last[INPUT] = input;
+        last[COLLUSION] = collusion;
+        last[MOVEMENT] = movement;
+        last[RENDER] = Math.max(render, 0);
+        last[FRAME] = input + collusion + movement + last[RENDER];
+        histograms[INPUT].record(input);
+        histograms[COLLUSION].record(collusion);
+        histograms[MOVEMENT].record(movement);
+        if (render >= 0)
+            histograms[RENDER].record(render);
+        histograms[FRAME].record(last[FRAME]);
+        frameRecorded();
+    }
+
+    /**
+     * Called after the durations of every frame were recorded, on the thread
+     *  running the game. Does nothing by default.
+     * @see #getLast(int)
+     */
+    protected void frameRecorded(){
+    }
+
+    /**
+     * Get the histogram of a phase.
+     * @param phase the phase, e.g. {@code RENDER}, or {@code FRAME} for the
+     *  whole frames.
+     * @return the histogram.
+     */
+    public TimeHistogram getHistogram(int phase){
+        return histograms[phase];
+    }
+
+    /**
+     * Get how long a phase took in the last measured frame.
+     * @param phase the phase, e.g. {@code RENDER}, or {@code FRAME} for the
+     *  whole frame.
+     * @return the duration in nanoseconds.
+     */
+    public long getLast(int phase){
+        return last[phase];
+    }
+
+    /**
+     * Get the name of a phase, e.g. to print it.
+     * @param phase the phase.
+     * @return the lower-case name.
+     */
+    public static String getName(int phase){
+        return NAMES[phase];
+    }
+
+    /**
+     * Get the number of phases, including the whole frame.
+     * @return the number of phases.
+     */
+    public static int getPhaseCount(){
+        return NAMES.length;
+    }
+
+    /**
+     * Removes all measured frames.
+     */
+    public void reset(){
+        for (TimeHistogram histogram : histograms)
+            histogram.reset();
+    }
+
+    /**
+     * Lists the histograms of all phases, one phase per line.
+     * @return the report.
+     */
+    @Override
+    public String toString(){
+        StringBuilder report = new StringBuilder();
+        for (int i = 0; i < NAMES.length; i++)
+            report.append(NAMES[i]).append(": ").append(histograms[i]).append('\n');
+        return report.toString();
+    }
+}
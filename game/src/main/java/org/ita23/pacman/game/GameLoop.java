@@ -1,5 +1,6 @@
 package org.ita23.pacman.game;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -18,29 +19,26 @@ import java.util.List;
  *     <li>{@code RenderEvent}</li>
  * </ol>
  * 
- * To hook up the game loops I/O system with something that sends
- *  keyboard or mouse input, use the {@code GameLoop}-class as the
- *  listener-implementation for the desired I/O interface.</p>
- * For example, to hook up the keyboard I/O with the game-loop, use
- *  something like this:
- * <code>frame.addKeyListener(GameLoop.INSTANCE);</code>
- * Where {@code frame} is for example a {@code JFrame}.
+ * Every game has it's own {@code GameLoop}-instance, so multiple games
+ *  can run side by side in the same JVM.
  *
  * @author Lukas Knuth
  * @author Fabain Bottler
  * @version 1.0
  */
-public enum GameLoop {
+public class GameLoop implements Snapshotable {
+
+    /** The frame-rate the game is designed to run at */
+    public static final int FRAMES_PER_SECOND = 60;
 
-    /** The instance to work with */
-    INSTANCE;
-    
     /** Indicates that the game-loop was locked and is ready to run */
     private boolean isLocked;
-    /** Weather if the game is currently frozen */
-    private boolean isFrozen;
-    /** Weather the game is currently paused */
-    private boolean isPaused;
+    /** Weather if the game is currently frozen, also set by other threads (e.g. the window) */
+    private volatile boolean isFrozen;
+    /** Weather the game is currently paused, also set by other threads (e.g. the window) */
+    private volatile boolean isPaused;
+    /** The state of the joystick in the last frame */
+    private InputEvent.JoystickState last_input;
 
     /** All registered {@code InputEvent}s */
     private List<InputEvent> inputEvents;
@@ -50,45 +48,261 @@ public enum GameLoop {
     private List<RenderContainer> renderEvents;
     /** All registered {@code CollusionEvent}s */
     private List<CollusionEvent> collusionEvents;
+    /** All registered {@code TimerEvent}s, identified by their index in snapshots */
+    private List<TimerEvent> timerEvents;
+    /** All events called while simulating, or {@code null} if any of them can't be skipped */
+    private List<SkippableEvent> skippableEvents;
     
     /** The {@code Map} the game takes place on */
     private Map game_field;
 
+    /** Schedules tasks in game-time, which stands still while frozen or paused */
+    private final Scheduler scheduler;
+    /** Schedules tasks in frames, which keep counting while frozen or paused */
+    private final Scheduler frame_scheduler;
+    /** The seed this game was created with */
+    private final long seed;
+    /** The source of all randomness in this game */
+    private final GameRandom random;
+    /** Records the input of every simulated frame, if set */
+    private InputRecorder recorder;
+    /** Measures the phases of every frame, if set */
+    private volatile FrameTimings timings;
+    /** Measures the individual events in sampled frames, if set */
+    private volatile EventProfiler profiler;
+
     /**
-     * Singleton. Private constructor!
+     * Create a new, empty game-loop. Register all events and then
+     *  {@code lock()} it before stepping through the game.
+     * @param seed the seed for all randomness in the game. The same seed and
+     *  the same input will always play out the same game.
      */
-    private GameLoop(){
+    public GameLoop(long seed){
+        this.seed = seed;
+        random = new GameRandom(seed);
         inputEvents = new ArrayList<InputEvent>(4);
         movementEvents = new ArrayList<MovementEvent>(6);
         renderEvents = new ArrayList<RenderContainer>(20);
         collusionEvents = new ArrayList<CollusionEvent>(5);
+        timerEvents = new ArrayList<TimerEvent>(8);
+        scheduler = new Scheduler();
+        frame_scheduler = new Scheduler();
         isLocked = false;
         isFrozen = false;
         isPaused = false;
+        last_input = InputEvent.JoystickState.NEUTRAL;
     }
 
     /**
      * Simulates and renders the next frame of the game. Call this method repeatedly to
      * progress the game forward.
+     * @see #simulate(InputEvent.JoystickState)
      */
     public void step(InputEvent.JoystickState state, Canvas c) {
+        FrameTimings timings = this.timings;
+        EventProfiler profiler = this.profiler;
+        if (timings != null || profiler != null){
+            measuredFrame(state, c, timings, profiler);
+            return;
+        }
+        if (handleInput(state, null)){
+            handleCollusions(null);
+            handleMovement(null);
+        }
+        frame_scheduler.tick();
+        render(c, null);
+    }
+
+    /**
+     * Simulates the next frame of the game <u>without rendering it</u>.</p>
+     * Only the {@code InputEvent}s, {@code CollusionEvent}s and {@code MovementEvent}s
+     *  are called, the registered {@code RenderEvent}s are skipped entirely. Use this
+     *  to run the game headless, for example on a server, where nobody will ever look
+     *  at the frames.
+     * @param state the state of the virtual joystick for this frame.
+     * @see #step(InputEvent.JoystickState, Canvas)
+     */
+    public void simulate(InputEvent.JoystickState state) {
+        FrameTimings timings = this.timings;
+        EventProfiler profiler = this.profiler;
+        if (timings != null || profiler != null){
+            measuredFrame(state, null, timings, profiler);
+            return;
+        }
+        if (handleInput(state, null)){
+            handleCollusions(null);
+            handleMovement(null);
+        }
+        frame_scheduler.tick();
+    }
+
+    /**
+     * Runs a frame exactly like {@code step()} or {@code simulate()}, but measures
+     *  how long every phase and (in sampled frames) every event takes.
+     * @param c the canvas to render to, or {@code null} to only simulate.
+     * @param timings the timings of the phases, or {@code null}.
+     * @param profiler the profiler of the events, or {@code null}.
+     */
+    private void measuredFrame(InputEvent.JoystickState state, Canvas c, FrameTimings timings, EventProfiler profiler){
+        EventProfiler sample = (profiler != null && profiler.sampleFrame()) ? profiler : null;
+        long start = System.nanoTime();
+        boolean running = handleInput(state, sample);
+        long input_done = System.nanoTime();
+        long collusion_done = input_done;
+        if (running){
+            handleCollusions(sample);
+            collusion_done = System.nanoTime();
+            handleMovement(sample);
+        }
+        frame_scheduler.tick();
+        long movement_done = System.nanoTime();
+        long render = -1;
+        if (c != null){
+            render(c, sample);
+            render = System.nanoTime() - movement_done;
+        }
+        if (timings != null)
+            timings.record(input_done - start, collusion_done - input_done, movement_done - collusion_done, render);
+    }
+
+    /**
+     * Calls all {@code InputEvent}s and records the frame.
+     * @param sample the profiler to measure every event with, or {@code null}.
+     * @return weather the game is running in this frame, e.g. neither frozen
+     *  nor paused.
+     */
+    private boolean handleInput(InputEvent.JoystickState state, EventProfiler sample){
         if (!isLocked()) {
             throw new IllegalStateException("Must call 'lock()' on GameLoop before calling 'step()'!");
         }
-        for (InputEvent event : inputEvents) {
-            event.joystickInput(state);
+        if (recorder != null) {
+            recorder.startFrame();
+        }
+        last_input = state;
+        for (int i = 0; i < inputEvents.size(); i++) {
+            long start = (sample == null) ? 0 : System.nanoTime();
+            inputEvents.get(i).joystickInput(state);
+            if (sample != null) sample.record(FrameTimings.INPUT, i, System.nanoTime() - start);
+        }
+        // Frontends may pause the game at any time, so only look once:
+        boolean frozen = isFrozen();
+        boolean paused = isPaused();
+        if (recorder != null) {
+            recorder.record(state, frozen, paused);
+        }
+        return !frozen && !paused;
+    }
+
+    private void handleCollusions(EventProfiler sample){
+        for (int i = 0; i < collusionEvents.size(); i++) {
+            long start = (sample == null) ? 0 : System.nanoTime();
+            collusionEvents.get(i).detectCollusion(game_field.getCollusionTest());
+            if (sample != null) sample.record(FrameTimings.COLLUSION, i, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Calls all {@code MovementEvent}s and advances the game-time.
+     */
+    private void handleMovement(EventProfiler sample){
+        for (int i = 0; i < movementEvents.size(); i++) {
+            long start = (sample == null) ? 0 : System.nanoTime();
+            movementEvents.get(i).move();
+            if (sample != null) sample.record(FrameTimings.MOVEMENT, i, System.nanoTime() - start);
+        }
+        long start = (sample == null) ? 0 : System.nanoTime();
+        scheduler.tick();
+        if (sample != null) sample.record(FrameTimings.MOVEMENT, movementEvents.size(), System.nanoTime() - start);
+    }
+
+    private void render(Canvas c, EventProfiler sample){
+        for (int i = 0; i < renderEvents.size(); i++) {
+            long start = (sample == null) ? 0 : System.nanoTime();
+            renderEvents.get(i).getEvent().render(c);
+            if (sample != null) sample.record(FrameTimings.RENDER, i, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Describes an event for the report of an {@code EventProfiler}, by it's
+     *  class and (for {@code RenderEvent}s) it's z-index.
+     * @param phase the phase of the event, e.g. {@code FrameTimings.RENDER}.
+     * @param index the index of the event in it's phase.
+     * @return the description.
+     */
+    String describeEvent(int phase, int index){
+        switch (phase){
+            case FrameTimings.INPUT:
+                return nameOf(inputEvents.get(index));
+            case FrameTimings.COLLUSION:
+                return nameOf(collusionEvents.get(index));
+            case FrameTimings.MOVEMENT:
+                if (index == movementEvents.size())
+                    return "Scheduler";
+                return nameOf(movementEvents.get(index));
+            default:
+                RenderContainer container = renderEvents.get(index);
+                return nameOf(container.getEvent())+" (z-index "+container.getZIndex()+")";
+        }
+    }
+
+    private static String nameOf(Object event){
+        String name = event.getClass().getSimpleName();
+        return name.isEmpty() ? event.getClass().getName() : name;
+    }
+
+    /**
+     * Simulates the next frame of the game, and then skips ahead until right before
+     *  the next frame in which anything is decided, e.g. a figure reaches the next
+     *  chunk or a scheduled task is due.</p>
+     * The frames in between are not simulated one by one, but the game ends up in
+     *  the exact same state as if {@code simulate()} had been called for each of
+     *  them with the same joystick-state. Since figures only react to the input
+     *  when they reach the next chunk, holding it until then makes no difference.</p>
+     * If any simulated event is not a {@code SkippableEvent}, only a single frame is
+     *  simulated.
+     * @param state the state of the virtual joystick for all simulated frames.
+     * @param max_frames the maximum amount of frames to advance.
+     * @return the amount of frames the game advanced, at least {@code 1}.
+     * @see #simulate(InputEvent.JoystickState)
+     */
+    public int simulateTile(InputEvent.JoystickState state, int max_frames){
+        if (max_frames < 1)
+            throw new IllegalArgumentException("Must advance at least one frame, was "+max_frames);
+        simulate(state);
+        int frames = Math.min(getSkippableFrames(), max_frames - 1);
+        if (recorder != null) {
+            // Keyframes can't be taken of skipped frames:
+            frames = Math.min(frames, recorder.getFramesToKeyframe());
         }
-        if (!isFrozen() && !isPaused()){
-            for (CollusionEvent event : collusionEvents) {
-                event.detectCollusion(game_field.getCollusionTest());
+        if (frames > 0){
+            for (SkippableEvent event : skippableEvents) {
+                event.skipFrames(frames);
             }
-            for (MovementEvent event : movementEvents) {
-                event.move();
+            scheduler.skip(frames);
+            frame_scheduler.skip(frames);
+            if (recorder != null) {
+                recorder.repeat(frames);
             }
         }
-        for (RenderContainer container : renderEvents) {
-            container.getEvent().render(c);
+        return frames + 1;
+    }
+
+    /**
+     * Get the amount of upcoming frames, in which nothing is decided and which
+     *  {@code simulateTile()} can therefore skip.
+     * @return the amount of skippable frames, {@code 0} if the next frame must be
+     *  simulated.
+     */
+    public int getSkippableFrames(){
+        if (skippableEvents == null || isFrozen() || isPaused())
+            return 0;
+        int frames = Math.min(scheduler.getIdleFrames(), frame_scheduler.getIdleFrames());
+        for (SkippableEvent event : skippableEvents) {
+            if (frames == 0) break;
+            frames = Math.min(frames, event.getSkippableFrames(game_field.getCollusionTest()));
         }
+        return frames;
     }
 
     /**
@@ -100,6 +314,19 @@ public enum GameLoop {
             throw new IllegalStateException("The game can't start without a Map!");
         // Order render events by their Z-index
         Collections.sort(this.renderEvents);
+        // Frames can only be skipped, if all simulated events can be skipped:
+        List<Object> simulated = new ArrayList<Object>(inputEvents);
+        simulated.addAll(collusionEvents);
+        simulated.addAll(movementEvents);
+        skippableEvents = new ArrayList<SkippableEvent>(simulated.size());
+        for (Object event : simulated){
+            if (!(event instanceof SkippableEvent)){
+                skippableEvents = null;
+                break;
+            }
+            if (!skippableEvents.contains(event))
+                skippableEvents.add((SkippableEvent) event);
+        }
         this.isLocked = true;
     }
 
@@ -112,7 +339,7 @@ public enum GameLoop {
      *  {@code ConcurrentModificationException}
      * @return whether if the main game-loop is currently running or not.
      */
-    private boolean isLocked(){
+    public boolean isLocked(){
         return isLocked;
     }
 
@@ -166,6 +393,80 @@ public enum GameLoop {
             this.collusionEvents.add(event);
     }
 
+    /**
+     * Add a new {@code TimerEvent}, which schedules tasks on any of the games
+     *  {@code Scheduler}s. Events must be registered in the same order for
+     *  every game, so snapshots of one game can be restored into another.
+     * This method <u>will not have any effect</u>, after the {@code lock()}-
+     *  method has been called.
+     * @param event the new event.
+     * @see #writeSnapshot(ByteBuffer)
+     */
+    public void addTimerEvent(TimerEvent event){
+        if (!isLocked())
+            this.timerEvents.add(event);
+    }
+
+    /**
+     * Get the index of the given event, as used in snapshots.
+     * @param event the registered event.
+     * @return the index, or {@code -1} if the event is not registered.
+     */
+    int indexOfTimerEvent(TimerEvent event){
+        for (int i = 0; i < timerEvents.size(); i++)
+            if (timerEvents.get(i) == event) return i;
+        return -1;
+    }
+
+    /**
+     * Get the event with the given index, as used in snapshots.
+     * @param index the index of the event.
+     * @return the registered event.
+     * @throws IllegalArgumentException if there is no event with that index.
+     */
+    TimerEvent getTimerEvent(int index){
+        if (index < 0 || index >= timerEvents.size())
+            throw new IllegalArgumentException("No TimerEvent registered with index "+index);
+        return timerEvents.get(index);
+    }
+
+    /**
+     * Get a hash of everything the loop carries over to the next frame: weather
+     *  it's frozen or paused, the state of it's random numbers and the tasks
+     *  pending on both of it's schedulers.
+     * @return the hash of the loop.
+     * @see Zobrist
+     */
+    public long getStateHash(){
+        long hash = Zobrist.mix((isFrozen ? 1 : 0) | (isPaused ? 2 : 0), random.getStateHash());
+        hash = Zobrist.mix(hash, scheduler.getStateHash(this));
+        return Zobrist.mix(hash, frame_scheduler.getStateHash(this));
+    }
+
+    @Override
+    public int getSnapshotSize() {
+        return 1 + random.getSnapshotSize()
+                + scheduler.getSnapshotSize() + frame_scheduler.getSnapshotSize();
+    }
+
+    @Override
+    public void writeSnapshot(ByteBuffer out) {
+        out.put((byte) ((isFrozen ? 1 : 0) | (isPaused ? 2 : 0)));
+        random.writeSnapshot(out);
+        scheduler.writeSnapshot(out, this);
+        frame_scheduler.writeSnapshot(out, this);
+    }
+
+    @Override
+    public void readSnapshot(ByteBuffer in) {
+        byte flags = in.get();
+        isFrozen = (flags & 1) != 0;
+        isPaused = (flags & 2) != 0;
+        random.readSnapshot(in);
+        scheduler.readSnapshot(in, this);
+        frame_scheduler.readSnapshot(in, this);
+    }
+
     /**
      * Set the {@code Map}, on which the game is played.
      * @param map the map to use.
@@ -176,6 +477,107 @@ public enum GameLoop {
             this.game_field = map;
     }
 
+    /**
+     * Get the {@code Scheduler} which runs in game-time. It is ticked once
+     *  per simulated frame, but stands still while the game is frozen or
+     *  paused.</p>
+     * Use this for anything that happens "in the game", like a bonus-fruit
+     *  disappearing after some time.
+     * @return the game-time scheduler.
+     */
+    public Scheduler getScheduler(){
+        return scheduler;
+    }
+
+    /**
+     * Get the source of randomness for this game. Figures should {@code split()}
+     *  their own stream off of it.
+     * @return the random-stream of this game.
+     */
+    public GameRandom getRandom(){
+        return random;
+    }
+
+    /**
+     * Get the seed this game was created with. For a forked game, this is not the
+     *  seed of the original game.
+     * @return the seed of this game.
+     */
+    public long getSeed(){
+        return seed;
+    }
+
+    /**
+     * Sets the recorder which records the input of every simulated frame from
+     *  now on.
+     * @param recorder the recorder, or {@code null} to stop recording.
+     * @see InputPlayer
+     */
+    public void setInputRecorder(InputRecorder recorder){
+        this.recorder = recorder;
+    }
+
+    /**
+     * Sets the timings, which measure how long the phases of every frame take
+     *  from now on. Without timings, nothing is measured.</p>
+     * This may be called from any thread, at any time.
+     * @param timings the timings, or {@code null} to stop measuring.
+     */
+    public void setFrameTimings(FrameTimings timings){
+        this.timings = timings;
+    }
+
+    /**
+     * Get the timings, which currently measure the phases of every frame.
+     * @return the timings, or {@code null} if nothing is measured.
+     */
+    public FrameTimings getFrameTimings(){
+        return timings;
+    }
+
+    /**
+     * Sets the profiler, which measures the individual events of this game in
+     *  sampled frames from now on.</p>
+     * This may be called from any thread, at any time.
+     * @param profiler the profiler, or {@code null} to stop measuring.
+     * @throws IllegalStateException if the profiler already measures another game.
+     */
+    public void setEventProfiler(EventProfiler profiler){
+        if (profiler != null)
+            profiler.attach(this);
+        this.profiler = profiler;
+    }
+
+    /**
+     * Get the profiler, which currently measures the individual events.
+     * @return the profiler, or {@code null} if nothing is measured.
+     */
+    public EventProfiler getEventProfiler(){
+        return profiler;
+    }
+
+    /**
+     * Freezes and pauses the game exactly as given, used to play back a recording.
+     * @param frozen weather the game should be frozen.
+     * @param paused weather the game should be paused.
+     */
+    void setHalted(boolean frozen, boolean paused){
+        this.isFrozen = frozen;
+        this.isPaused = paused;
+    }
+
+    /**
+     * Get the {@code Scheduler} which runs in frames. It is ticked on every
+     *  simulated frame, <u>including</u> the ones where the game is frozen or
+     *  paused.</p>
+     * Use this for tasks which un-freeze the game again, or for things shown
+     *  on-screen for a short amount of time.
+     * @return the frame scheduler.
+     */
+    public Scheduler getFrameScheduler(){
+        return frame_scheduler;
+    }
+
     /**
      * This method will un-pause or un-freeze the game.</p>
      * Calling this method when the game was not paused/frozen
@@ -224,6 +626,14 @@ public enum GameLoop {
         return this.isPaused;
     }
 
+    /**
+     * Get the state of the joystick, which was given for the last frame.
+     * @return the last state, {@code NEUTRAL} before the first frame.
+     */
+    public InputEvent.JoystickState getLastInput(){
+        return this.last_input;
+    }
+
     /**
      * Weather the game is currently frozen or not.
      * @return weather the game is currently frozen.
@@ -0,0 +1,136 @@
+package org.ita23.pacman.game;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The source of all randomness in a game. Seeding it with the same value
+ *  makes the game play out exactly the same, given the same input.</p>
+ * This is the SplitMix64-algorithm used by {@code java.util.SplittableRandom},
+ *  and produces the same values for the same seed. It is implemented here
+ *  because the web-version can't rely on {@code SplittableRandom} being
+ *  available.</p>
+ * Every figure that needs randomness should {@code split()} it's own stream
+ *  off the games instance once, when it is created. That way, the values drawn
+ *  by one figure don't depend on how many values the others have drawn.</p>
+ * Instances are not thread-safe, but every game has it's own.
+ * @author Lukas Knuth
+ * @version 1.0
+ * @see GameLoop#getRandom()
+ */
+public class GameRandom implements Snapshotable {
+
+    /** The default gamma, e.g. the golden ratio scaled to 64bit */
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    /** The current seed, advanced by {@code gamma} on every draw */
+    private long seed;
+    /** The (odd) step-width of the seed, different for every split stream */
+    private long gamma;
+
+    /**
+     * Create a new random-stream with the given seed.
+     * @param seed the initial seed.
+     */
+    public GameRandom(long seed){
+        this(seed, GOLDEN_GAMMA);
+    }
+
+    private GameRandom(long seed, long gamma){
+        this.seed = seed;
+        this.gamma = gamma;
+    }
+
+    /**
+     * Creates a new, independent random-stream, seeded from this one.
+     * @return the new stream.
+     */
+    public GameRandom split(){
+        return new GameRandom(nextLong(), mixGamma(nextSeed()));
+    }
+
+    /**
+     * Get the next random {@code long}-value.
+     * @return a uniformly distributed {@code long}-value.
+     */
+    public long nextLong(){
+        return mix64(nextSeed());
+    }
+
+    /**
+     * Get the next random {@code int}-value.
+     * @return a uniformly distributed {@code int}-value.
+     */
+    public int nextInt(){
+        return mix32(nextSeed());
+    }
+
+    /**
+     * Get a random value between {@code 0} (inclusive) and the given bound
+     *  (exclusive).
+     * @param bound the upper bound, must be positive.
+     * @return a uniformly distributed value in the given range.
+     * @throws IllegalArgumentException if {@code bound} is not positive.
+     */
+    public int nextInt(int bound){
+        if (bound <= 0)
+            throw new IllegalArgumentException("Bound must be positive, was "+bound);
+        int r = mix32(nextSeed());
+        int m = bound - 1;
+        if ((bound & m) == 0) // Power of two, just mask it:
+            return r & m;
+        // Reject values from the incomplete last range, to keep it uniform:
+        for (int u = r >>> 1; u + m - (r = u % bound) < 0; u = mix32(nextSeed()) >>> 1);
+        return r;
+    }
+
+    /**
+     * Get a hash of the current state of this stream. Streams with the same
+     *  hash draw the same values.
+     * @return the hash of this stream.
+     * @see Zobrist
+     */
+    public long getStateHash(){
+        return Zobrist.mix(seed, gamma);
+    }
+
+    @Override
+    public int getSnapshotSize() {
+        return 8 + 8;
+    }
+
+    @Override
+    public void writeSnapshot(ByteBuffer out) {
+        out.putLong(seed);
+        out.putLong(gamma);
+    }
+
+    @Override
+    public void readSnapshot(ByteBuffer in) {
+        seed = in.getLong();
+        gamma = in.getLong();
+    }
+
+    private long nextSeed(){
+        return seed += gamma;
+    }
+
+    static long mix64(long z){
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    private static int mix32(long z){
+        z = (z ^ (z >>> 33)) * 0x62a9d9ed799705f5L;
+        return (int)(((z ^ (z >>> 28)) * 0xcb24d0a5c88c35b3L) >>> 32);
+    }
+
+    private static long mixGamma(long z){
+        z = (z ^ (z >>> 33)) * 0xff51afd7ed558ccdL;
+        z = (z ^ (z >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        z = (z ^ (z >>> 33)) | 1L;
+        // Make sure the gamma has enough bit-transitions to mix well:
+        int n = Long.bitCount(z ^ (z >>> 1));
+        return (n < 24) ? z ^ 0xaaaaaaaaaaaaaaaaL : z;
+    }
+}
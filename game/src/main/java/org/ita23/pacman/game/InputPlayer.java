@@ -0,0 +1,363 @@
+package org.ita23.pacman.game;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Plays back the input recorded by an {@code InputRecorder}.</p>
+ * The game to play it back on must be set up with the recorded seed and
+ *  must not have been stepped yet. Every frame is then fed through the
+ *  {@code GameLoop}, which plays out the exact same game as the recorded one,
+ *  either frame by frame or tile by tile.</p>
+ * If the recording has keyframes, the player can {@code seek()} to any frame by
+ *  restoring the closest keyframe before it, so only the frames after that have
+ *  to be simulated. Only the runs and the index of the keyframes are read up
+ *  front, a keyframe is restored straight from the recording at it's offset
+ *  once it's needed.
+ * @author Lukas Knuth
+ * @version 1.0
+ * @see InputRecorder
+ */
+public class InputPlayer {
+
+    /** All joystick-states, indexed by their ordinal */
+    private static final InputEvent.JoystickState[] STATES = InputEvent.JoystickState.values();
+
+    /** The seed of the recorded game */
+    private final long seed;
+    /** The number of recorded frames */
+    private final int frames;
+    /** The recorded frame of every run */
+    private final byte[] codes;
+    /** The number of frames in every run */
+    private final int[] lengths;
+    /** The frame every run starts at */
+    private final int[] starts;
+    /** The frame every keyframe was taken at, ascending */
+    private final int[] keyframe_frames;
+    /** The offset of every keyframe in the recording */
+    private final int[] keyframe_offsets;
+    /** The whole recording, to restore the keyframes from */
+    private final ByteBuffer recording;
+
+    /** The run the next frame is in */
+    private int run;
+    /** The frames of the current run which were already played */
+    private int played_in_run;
+    /** The number of frames played */
+    private int played;
+
+    private InputPlayer(long seed, int frames, byte[] codes, int[] lengths,
+                        int[] keyframe_frames, int[] keyframe_offsets, ByteBuffer recording){
+        this.seed = seed;
+        this.frames = frames;
+        this.codes = codes;
+        this.lengths = lengths;
+        this.keyframe_frames = keyframe_frames;
+        this.keyframe_offsets = keyframe_offsets;
+        this.recording = recording;
+        this.starts = new int[lengths.length];
+        for (int i = 1; i < lengths.length; i++){
+            starts[i] = starts[i-1] + lengths[i-1];
+        }
+    }
+
+    /**
+     * Reads a recording, as written by {@code InputRecorder.writeTo()}.
+     * @param in the stream to read from, which is not closed.
+     * @return the player for the recording.
+     * @throws IOException if reading failed or the stream holds no (supported)
+     *  recording.
+     */
+    public static InputPlayer read(InputStream in) throws IOException {
+        ByteBuffer recording = ByteBuffer.wrap(in.readAllBytes()).asReadOnlyBuffer();
+        try {
+            return read(recording);
+        } catch (BufferUnderflowException | IllegalArgumentException e){
+            throw new IOException("Corrupt recording: truncated", e);
+        }
+    }
+
+    /**
+     * Reads the runs and the index of the keyframes from the whole recording,
+     *  which is kept to restore the keyframes from.
+     */
+    private static InputPlayer read(ByteBuffer recording) throws IOException {
+        if (recording.remaining() < 4 || recording.getInt() != InputRecorder.MAGIC)
+            throw new IOException("Not a recording");
+        int version = recording.getShort();
+        if (version != InputRecorder.VERSION)
+            throw new IOException("Unsupported version of recording: "+version);
+        long seed = recording.getLong();
+        if (recording.getInt() < 0)
+            throw new IOException("Corrupt recording: negative keyframe-interval");
+        int runs_start = recording.position();
+        // The end: the number of frames, the offset of the index and the magic again
+        int end = recording.limit() - 12;
+        if (end < runs_start || recording.getInt(end + 8) != InputRecorder.MAGIC)
+            throw new IOException("Corrupt recording: missing end");
+        int frames = recording.getInt(end);
+        int index = recording.getInt(end + 4);
+        if (frames < 0 || index < runs_start || index > end - 4)
+            throw new IOException("Corrupt recording: no index");
+        // The index of the keyframes, right after the runs:
+        recording.position(index);
+        int keyframe_count = recording.getInt();
+        if (keyframe_count < 0 || keyframe_count * 8L != end - recording.position())
+            throw new IOException("Corrupt recording: index doesn't match the keyframes");
+        int[] keyframe_frames = new int[keyframe_count];
+        int[] keyframe_offsets = new int[keyframe_count];
+        for (int i = 0; i < keyframe_count; i++){
+            keyframe_frames[i] = recording.getInt();
+            keyframe_offsets[i] = recording.getInt();
+        }
+        // The runs, skipping over the keyframes in between:
+        recording.position(runs_start).limit(index);
+        byte[] codes = new byte[64];
+        int[] lengths = new int[64];
+        int runs = 0;
+        int keyframe = 0;
+        long total = 0;
+        for (int tag = recording.get() & 0xFF; tag != InputRecorder.END_TAG; tag = recording.get() & 0xFF){
+            if (tag == InputRecorder.KEYFRAME_TAG){
+                if (keyframe == keyframe_count || keyframe_offsets[keyframe] != recording.position() - 1
+                        || keyframe_frames[keyframe] != total || readNumber(recording) != total)
+                    throw new IOException("Corrupt recording: index doesn't match the keyframes");
+                int size = readNumber(recording);
+                recording.position(recording.position() + size);
+                keyframe++;
+            } else {
+                if (runs == codes.length){
+                    codes = Arrays.copyOf(codes, runs * 2);
+                    lengths = Arrays.copyOf(lengths, runs * 2);
+                }
+                codes[runs] = readCode(tag);
+                lengths[runs] = readLength(recording);
+                total += lengths[runs++];
+                if (total > Integer.MAX_VALUE)
+                    throw new IOException("Corrupt recording: too many frames");
+            }
+        }
+        if (keyframe != keyframe_count || recording.hasRemaining())
+            throw new IOException("Corrupt recording: index doesn't match the keyframes");
+        if (total != frames)
+            throw new IOException("Corrupt recording: "+total+" frames in runs, expected "+frames);
+        recording.clear();
+        return new InputPlayer(seed, frames, Arrays.copyOf(codes, runs), Arrays.copyOf(lengths, runs),
+                keyframe_frames, keyframe_offsets, recording);
+    }
+
+    private static byte readCode(int code) throws IOException {
+        if (code >= InputRecorder.KEYFRAME_TAG || (code & InputRecorder.STATE_MASK) >= STATES.length)
+            throw new IOException("Corrupt recording: unknown input "+code);
+        return (byte) code;
+    }
+
+    private static int readLength(ByteBuffer data) throws IOException {
+        int length = readNumber(data);
+        if (length <= 0)
+            throw new IOException("Corrupt recording: empty run");
+        return length;
+    }
+
+    private static int readNumber(ByteBuffer data) throws IOException {
+        int number = 0;
+        for (int shift = 0; ; shift += 7){
+            int b = data.get() & 0xFF;
+            if (shift > 28)
+                throw new IOException("Corrupt recording: number too long");
+            number |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) break;
+        }
+        if (number < 0)
+            throw new IOException("Corrupt recording: number too long");
+        return number;
+    }
+
+    /**
+     * Get the seed of the recorded game, to set up the game to play back on.
+     * @return the seed.
+     */
+    public long getSeed(){
+        return seed;
+    }
+
+    /**
+     * Get the number of recorded frames.
+     * @return the number of frames.
+     */
+    public int getFrameCount(){
+        return frames;
+    }
+
+    /**
+     * Get the number of frames played back so far.
+     * @return the number of played frames.
+     */
+    public int getFrame(){
+        return played;
+    }
+
+    /**
+     * Checks if there are any frames left to play back.
+     * @return weather there are frames left.
+     */
+    public boolean hasNext(){
+        return played < frames;
+    }
+
+    /**
+     * Get the number of keyframes in the recording.
+     * @return the number of keyframes, {@code 0} if it has none.
+     */
+    public int getKeyframeCount(){
+        return keyframe_frames.length;
+    }
+
+    /**
+     * Get the frame a keyframe was taken at, so {@code seek()}ing to it only
+     *  restores the keyframe.
+     * @param keyframe the index of the keyframe, from {@code 0} to
+     *  {@code getKeyframeCount() - 1}.
+     * @return the frame of the keyframe.
+     */
+    public int getKeyframeFrame(int keyframe){
+        return keyframe_frames[keyframe];
+    }
+
+    /**
+     * Brings the game into the state it was in right before the given frame was
+     *  simulated, so it will be played next.</p>
+     * The closest keyframe before the frame is restored, unless the game is
+     *  already closer to it. The frames in between are then simulated.
+     * @param frame the frame to seek to, between {@code 0} and {@code getFrameCount()}.
+     * @param loop the game-loop to play back on.
+     * @param game the whole game the loop belongs to, to restore keyframes into.
+     * @throws IllegalArgumentException if there is no such frame.
+     * @throws IllegalStateException if the frame was already played and there
+     *  is no keyframe before it.
+     */
+    public void seek(int frame, GameLoop loop, Snapshotable game){
+        if (frame < 0 || frame > frames)
+            throw new IllegalArgumentException("No frame "+frame+", recording has "+frames+" frames");
+        int keyframe = Arrays.binarySearch(keyframe_frames, frame);
+        if (keyframe < 0)
+            keyframe = -keyframe - 2; // The one before the insertion-point
+        if (keyframe >= 0 && (frame < played || keyframe_frames[keyframe] > played)){
+            game.readSnapshot(getKeyframe(keyframe));
+            moveTo(keyframe_frames[keyframe]);
+        } else if (frame < played){
+            throw new IllegalStateException("Can't go back to frame "+frame+", there is no keyframe before it");
+        }
+        while (played < frame){
+            simulate(loop);
+        }
+    }
+
+    /**
+     * Get the snapshot of the given keyframe, straight from the recording.
+     */
+    private ByteBuffer getKeyframe(int keyframe){
+        ByteBuffer snapshot = recording.duplicate();
+        // Skip the tag and the frame, which were checked when reading:
+        snapshot.position(keyframe_offsets[keyframe] + 1);
+        try {
+            readNumber(snapshot);
+            int size = readNumber(snapshot);
+            snapshot.limit(snapshot.position() + size);
+        } catch (IOException e){
+            throw new IllegalStateException("Keyframe "+keyframe+" was checked when reading", e);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Simulates and renders the next recorded frame.
+     * @param loop the game-loop to play back on.
+     * @param c the canvas to render to.
+     * @throws NoSuchElementException if all frames were played.
+     */
+    public void step(GameLoop loop, Canvas c){
+        loop.step(next(loop), c);
+    }
+
+    /**
+     * Simulates the next recorded frame, without rendering it.
+     * @param loop the game-loop to play back on.
+     * @throws NoSuchElementException if all frames were played.
+     */
+    public void simulate(GameLoop loop){
+        loop.simulate(next(loop));
+    }
+
+    /**
+     * Simulates the next recorded frame and skips ahead like
+     *  {@code GameLoop.simulateTile()}, but never past the frames recorded
+     *  with the same input.
+     * @param loop the game-loop to play back on.
+     * @return the amount of frames played, at least {@code 1}.
+     * @throws NoSuchElementException if all frames were played.
+     * @see GameLoop#simulateTile(InputEvent.JoystickState, int)
+     */
+    public int simulateTile(GameLoop loop){
+        if (!hasNext())
+            throw new NoSuchElementException("All "+frames+" frames were played");
+        int played_frames = loop.simulateTile(apply(loop), lengths[run] - played_in_run);
+        advance(played_frames);
+        return played_frames;
+    }
+
+    /**
+     * Moves the position in the recording to the given frame.
+     */
+    private void moveTo(int frame){
+        played = frame;
+        if (frame == frames){
+            run = lengths.length;
+            played_in_run = 0;
+            return;
+        }
+        run = Arrays.binarySearch(starts, frame);
+        if (run < 0)
+            run = -run - 2;
+        played_in_run = frame - starts[run];
+    }
+
+    /**
+     * Advances to the next frame and brings the game into the recorded state.
+     * @return the recorded joystick-state of the frame.
+     */
+    private InputEvent.JoystickState next(GameLoop loop){
+        if (!hasNext())
+            throw new NoSuchElementException("All "+frames+" frames were played");
+        InputEvent.JoystickState state = apply(loop);
+        advance(1);
+        return state;
+    }
+
+    /**
+     * Brings the game into the state recorded for the next frame.
+     * @return the recorded joystick-state of the frame.
+     */
+    private InputEvent.JoystickState apply(GameLoop loop){
+        int code = codes[run];
+        loop.setHalted((code & InputRecorder.FROZEN_FLAG) != 0, (code & InputRecorder.PAUSED_FLAG) != 0);
+        return STATES[code & InputRecorder.STATE_MASK];
+    }
+
+    /**
+     * Advances by the given amount of frames, which must not leave the current run.
+     */
+    private void advance(int count){
+        played_in_run += count;
+        if (played_in_run == lengths[run]){
+            run++;
+            played_in_run = 0;
+        }
+        played += count;
+    }
+}
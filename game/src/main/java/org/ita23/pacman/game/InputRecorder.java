@@ -0,0 +1,266 @@
+package org.ita23.pacman.game;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Records the input of every simulated frame of a game, so it can be played
+ *  back exactly later on.</p>
+ * Besides the joystick-state, it's recorded weather the game was paused or
+ *  frozen. Frontends pause and resume the game from the outside (e.g. when the
+ *  window loses focus), which isn't part of the game itself.</p>
+ * Most frames repeat the input of the frame before, so only runs of equal frames
+ *  are kept. Recording a frame therefore only compares and counts.</p>
+ * Optionally, a snapshot of the whole game is taken every couple of seconds.
+ *  These keyframes allow the player to seek to any frame, by restoring the
+ *  closest keyframe before it and only simulating the frames in between.</p>
+ * The written file starts with a header of {@code MAGIC}, {@code VERSION}, the
+ *  seed of the game and the number of frames between two keyframes ({@code 0}
+ *  if there are none). It's followed by the runs, each one byte for the recorded
+ *  frame and it's length as a variable-length number (7 bits per byte, lowest
+ *  first). Right before the run which starts at it's frame, every keyframe is
+ *  written as {@code KEYFRAME_TAG}, it's frame and size as variable-length
+ *  numbers and the snapshot itself. The runs end with {@code END_TAG}.</p>
+ * After that follows an index of all keyframes, with the frame and the offset
+ *  in the file of each one, so the player can restore them without parsing
+ *  them up front.
+ *  The file ends with the number of recorded frames, the offset of the index
+ *  and {@code MAGIC} again.
+ * @author Lukas Knuth
+ * @version 1.0
+ * @see InputPlayer
+ * @see GameLoop#setInputRecorder(InputRecorder)
+ */
+public class InputRecorder {
+
+    /** The first four bytes of every recording, "PMRP" */
+    public static final int MAGIC = 0x504D5250;
+    /** The version of the file-format, increased on every incompatible change */
+    public static final int VERSION = 2;
+
+    /** Marks a keyframe between the runs */
+    static final int KEYFRAME_TAG = 0x80;
+    /** Marks the end of the runs */
+    static final int END_TAG = 0xFF;
+
+    /** Set in a recorded frame, if the game was paused */
+    static final int PAUSED_FLAG = 1 << 3;
+    /** Set in a recorded frame, if the game was frozen */
+    static final int FROZEN_FLAG = 1 << 4;
+    /** The bits of a recorded frame holding the joystick-state */
+    static final int STATE_MASK = PAUSED_FLAG - 1;
+
+    /** The seed of the recorded game */
+    private final long seed;
+    /** The recorded frame of every run */
+    private byte[] codes;
+    /** The number of frames in every run */
+    private int[] lengths;
+    /** The number of runs */
+    private int runs;
+    /** The number of recorded frames */
+    private int frames;
+
+    /** The game to take keyframes of, or {@code null} to take none */
+    private final Snapshotable game;
+    /** The number of frames between two keyframes */
+    private final int keyframe_interval;
+    /** The frame every keyframe was taken at */
+    private int[] keyframe_frames;
+    /** The snapshot of every keyframe */
+    private byte[][] keyframes;
+    /** The number of keyframes */
+    private int keyframe_count;
+
+    /**
+     * Creates a new, empty recording without keyframes.
+     * @param seed the seed of the recorded game.
+     * @see GameLoop#getSeed()
+     */
+    public InputRecorder(long seed){
+        this(seed, null, 0);
+    }
+
+    /**
+     * Creates a new, empty recording, which takes a keyframe of the given game
+     *  every couple of seconds of game-time. The first keyframe is taken before
+     *  the first recorded frame.
+     * @param seed the seed of the recorded game.
+     * @param game the whole game to take keyframes of, e.g. the session.
+     * @param keyframe_seconds the seconds of game-time between two keyframes.
+     * @throws IllegalArgumentException if {@code keyframe_seconds} is not positive.
+     * @see GameLoop#getSeed()
+     */
+    public InputRecorder(long seed, Snapshotable game, int keyframe_seconds){
+        if (game != null && keyframe_seconds <= 0)
+            throw new IllegalArgumentException("Seconds between keyframes must be positive, was "+keyframe_seconds);
+        this.seed = seed;
+        this.game = game;
+        this.keyframe_interval = (game == null) ? 0 : keyframe_seconds * GameLoop.FRAMES_PER_SECOND;
+        codes = new byte[64];
+        lengths = new int[64];
+        keyframe_frames = new int[8];
+        keyframes = new byte[8][];
+    }
+
+    /**
+     * Called before a frame is simulated, to take a keyframe if one is due.
+     */
+    void startFrame(){
+        if (game == null || frames % keyframe_interval != 0)
+            return;
+        if (keyframe_count == keyframes.length){
+            keyframe_frames = Arrays.copyOf(keyframe_frames, keyframe_count * 2);
+            keyframes = Arrays.copyOf(keyframes, keyframe_count * 2);
+        }
+        byte[] snapshot = new byte[game.getSnapshotSize()];
+        game.writeSnapshot(ByteBuffer.wrap(snapshot));
+        keyframe_frames[keyframe_count] = frames;
+        keyframes[keyframe_count] = snapshot;
+        keyframe_count++;
+    }
+
+    /**
+     * Get the amount of frames which can be recorded with {@code repeat()},
+     *  before the next keyframe has to be taken.
+     * @return the amount of frames, {@code Integer.MAX_VALUE} if no keyframes
+     *  are taken.
+     */
+    int getFramesToKeyframe(){
+        if (game == null)
+            return Integer.MAX_VALUE;
+        return (keyframe_interval - frames % keyframe_interval) % keyframe_interval;
+    }
+
+    /**
+     * Records a single frame.
+     * @param state the joystick-state of the frame.
+     * @param frozen weather the game was frozen in the frame.
+     * @param paused weather the game was paused in the frame.
+     */
+    public void record(InputEvent.JoystickState state, boolean frozen, boolean paused){
+        int code = state.ordinal() | (frozen ? FROZEN_FLAG : 0) | (paused ? PAUSED_FLAG : 0);
+        if (runs > 0 && codes[runs-1] == code && lengths[runs-1] < Integer.MAX_VALUE){
+            lengths[runs-1]++;
+        } else {
+            if (runs == codes.length){
+                codes = Arrays.copyOf(codes, runs * 2);
+                lengths = Arrays.copyOf(lengths, runs * 2);
+            }
+            codes[runs] = (byte) code;
+            lengths[runs] = 1;
+            runs++;
+        }
+        frames++;
+    }
+
+    /**
+     * Records the given number of frames, exactly like the last recorded one.
+     * @param count the number of frames.
+     */
+    void repeat(int count){
+        if (runs == 0)
+            throw new IllegalStateException("No frame recorded yet");
+        if (lengths[runs-1] > Integer.MAX_VALUE - count)
+            throw new IllegalStateException("Run is too long");
+        if (count > getFramesToKeyframe())
+            throw new IllegalStateException("Can't repeat past the next keyframe");
+        lengths[runs-1] += count;
+        frames += count;
+    }
+
+    /**
+     * Get the seed of the recorded game.
+     * @return the seed.
+     */
+    public long getSeed(){
+        return seed;
+    }
+
+    /**
+     * Get the number of recorded frames.
+     * @return the number of frames.
+     */
+    public int getFrameCount(){
+        return frames;
+    }
+
+    /**
+     * Get the number of keyframes taken so far.
+     * @return the number of keyframes.
+     */
+    public int getKeyframeCount(){
+        return keyframe_count;
+    }
+
+    /**
+     * Writes everything recorded so far to the given stream.
+     * @param out the stream to write to, which is not closed.
+     * @throws IOException if writing to the stream failed.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        DataOutputStream data = new DataOutputStream(out);
+        data.writeInt(MAGIC);
+        data.writeShort(VERSION);
+        data.writeLong(seed);
+        data.writeInt(keyframe_interval);
+        int[] offsets = new int[keyframe_count];
+        int keyframe = 0;
+        int frame = 0;
+        for (int i = 0; i < runs; i++){
+            int length = lengths[i];
+            // Split the run at every keyframe inside of it:
+            while (keyframe < keyframe_count && keyframe_frames[keyframe] < frame + length){
+                int before = keyframe_frames[keyframe] - frame;
+                if (before > 0){
+                    writeRun(data, codes[i], before);
+                    frame += before;
+                    length -= before;
+                }
+                offsets[keyframe] = data.size();
+                writeKeyframe(data, keyframe++);
+            }
+            writeRun(data, codes[i], length);
+            frame += length;
+        }
+        // A keyframe of the frame which is currently recorded:
+        while (keyframe < keyframe_count && keyframe_frames[keyframe] <= frames){
+            offsets[keyframe] = data.size();
+            writeKeyframe(data, keyframe++);
+        }
+        data.writeByte(END_TAG);
+        int index = data.size();
+        data.writeInt(keyframe);
+        for (int i = 0; i < keyframe; i++){
+            data.writeInt(keyframe_frames[i]);
+            data.writeInt(offsets[i]);
+        }
+        data.writeInt(frames);
+        data.writeInt(index);
+        data.writeInt(MAGIC);
+        data.flush();
+    }
+
+    private void writeRun(DataOutputStream data, int code, int length) throws IOException {
+        data.writeByte(code);
+        writeNumber(data, length);
+    }
+
+    private void writeKeyframe(DataOutputStream data, int keyframe) throws IOException {
+        data.writeByte(KEYFRAME_TAG);
+        writeNumber(data, keyframe_frames[keyframe]);
+        writeNumber(data, keyframes[keyframe].length);
+        data.write(keyframes[keyframe]);
+    }
+
+    private static void writeNumber(DataOutputStream data, int number) throws IOException {
+        while (number >= 0x80){
+            data.writeByte((number & 0x7F) | 0x80);
+            number >>>= 7;
+        }
+        data.writeByte(number);
+    }
+}
@@ -0,0 +1,256 @@
+package org.ita23.pacman.game;
+
+/**
+ * Draws the frame-rate, a graph of the last frame-times, the time spent in
+ *  each phase and (where the platform can tell) the allocation-rate on top
+ *  of the game.</p>
+ * Register it with the lowest z-index (see {@code Z_INDEX}) before the loop
+ *  is locked, then show and hide it at any time, from any thread. While it's
+ *  hidden, rendering it only checks a flag. While it's shown, it draws with
+ *  a fixed number of calls to the {@code Canvas} and only builds it's texts
+ *  twice a second, so it doesn't allocate much itself.</p>
+ * The frame-times are the intervals between two rendered frames, as seen by
+ *  the player. The phases are taken from the {@code FrameTimings} of the loop,
+ *  which are set when the overlay is shown, if the loop has none yet.
+ * @author Lukas Knuth
+ * @version 1.0
+ */
+public class PerformanceOverlay implements RenderEvent {
+
+    /**
+     * Counts the bytes allocated by the thread running the game. Not every
+     *  platform can do this, so it's optional.
+     */
+    public interface AllocationCounter {
+
+        /**
+         * Get the bytes allocated by the current thread so far.
+         * @return the allocated bytes.
+         */
+        public long getAllocatedBytes();
+    }
+
+    /** The z-index to register the overlay with, so it's drawn on top of everything */
+    public static final int Z_INDEX = Integer.MIN_VALUE;
+
+    /** The nanoseconds a frame may take at the designed frame-rate */
+    private static final long BUDGET_NANOS = 1000000000L / GameLoop.FRAMES_PER_SECOND;
+    /** The number of frames the texts and bars are averaged over */
+    private static final int UPDATE_FRAMES = GameLoop.FRAMES_PER_SECOND / 2;
+    /** The number of frames shown in the graph */
+    private static final int GRAPH_FRAMES = 60;
+    /** The phases shown as bars, all but the whole frame */
+    private static final int PHASES = FrameTimings.FRAME;
+
+    private static final int PADDING = 4;
+    private static final int LINE_HEIGHT = 12;
+    /** The width of a single frame in the graph */
+    private static final int GRAPH_BAR = 2;
+    private static final int GRAPH_WIDTH = GRAPH_FRAMES * GRAPH_BAR;
+    /** The height of the graph, two budgets high */
+    private static final int GRAPH_HEIGHT = 30;
+    /** The width of a full budget in the bars of the phases */
+    private static final int BAR_WIDTH = GRAPH_WIDTH;
+    /** The width of the overlay in pixels */
+    public static final int WIDTH = GRAPH_WIDTH + 2 * PADDING;
+    /** The height of the overlay in pixels */
+    public static final int HEIGHT = LINE_HEIGHT + GRAPH_HEIGHT + (PHASES + 1) * LINE_HEIGHT + 3 * PADDING;
+
+    private static final Font FONT = new Font("Arial", Font.Style.BOLD, 10);
+    private static final Color BOX_COLOR = new Color(0, 0, 0);
+    private static final Color TEXT_COLOR = Color.WHITE;
+    private static final Color FAST_COLOR = new Color(54, 149, 131);
+    private static final Color SLOW_COLOR = new Color(222, 64, 64);
+    private static final Color BUDGET_COLOR = new Color(128, 128, 128);
+    /** Dark enough to read the texts on top of the bars */
+    private static final Color BAR_COLOR = new Color(110, 110, 40);
+
+    private final GameLoop loop;
+    private final AllocationCounter allocations;
+    /** The top left corner of the overlay */
+    private final int x;
+    private final int y;
+
+    /** Weather the overlay should be shown, set from any thread */
+    private volatile boolean visible;
+    /** Weather the overlay was shown in the last rendered frame */
+    private boolean showing;
+
+    /** When the last frame was rendered */
+    private long last_render;
+    /** The intervals between the last rendered frames, {@code next_interval} is the oldest */
+    private final long[] intervals;
+    private int next_interval;
+    /** The heights of the frames in the graph, in the same order as the intervals */
+    private final int[] graph;
+
+    /** When the current period of {@code UPDATE_FRAMES} frames started */
+    private long period_start;
+    private int period_frames;
+    /** The bytes allocated when the current period started */
+    private long period_allocated;
+    /** The nanoseconds spent in every phase during the current period */
+    private final long[] period_phases;
+
+    /** The texts and bars of the last period */
+    private String fps_text;
+    private String allocation_text;
+    private final String[] phase_texts;
+    private final int[] phase_bars;
+
+    /**
+     * Creates a new, hidden overlay.
+     * @param loop the loop the overlay is registered with.
+     * @param x the left edge of the overlay.
+     * @param y the top edge of the overlay.
+     * @param allocations counts the allocated bytes, or {@code null} if the
+     *  platform can't count them.
+     */
+    public PerformanceOverlay(GameLoop loop, int x, int y, AllocationCounter allocations){
+        this.loop = loop;
+        this.x = x;
+        this.y = y;
+        this.allocations = allocations;
+        intervals = new long[GRAPH_FRAMES];
+        graph = new int[GRAPH_FRAMES];
+        period_phases = new long[PHASES];
+        phase_texts = new String[PHASES];
+        phase_bars = new int[PHASES];
+    }
+
+    /**
+     * Shows or hides the overlay, beginning with the next rendered frame.
+     * @param visible weather the overlay should be shown.
+     */
+    public void setVisible(boolean visible){
+        if (visible && loop.getFrameTimings() == null)
+            loop.setFrameTimings(new FrameTimings());
+        this.visible = visible;
+    }
+
+    /**
+     * Shows the overlay if it's hidden, hides it otherwise.
+     */
+    public void toggle(){
+        setVisible(!visible);
+    }
+
+    /**
+     * Weather the overlay is currently shown.
+     * @return weather it's shown.
+     */
+    public boolean isVisible(){
+        return visible;
+    }
+
+    @Override
+    public void render(Canvas c) {
+        if (!visible){
+            showing = false;
+            return;
+        }
+        long now = System.nanoTime();
+        if (!showing){
+            // Don't show what happened while hidden:
+            showing = true;
+            reset(now);
+        } else {
+            measure(now);
+        }
+        last_render = now;
+        draw(c);
+    }
+
+    /**
+     * Forgets all measured frames.
+     */
+    private void reset(long now){
+        for (int i = 0; i < GRAPH_FRAMES; i++){
+            intervals[i] = 0;
+            graph[i] = 0;
+        }
+        startPeriod(now);
+        fps_text = "- fps";
+        allocation_text = allocations == null ? "alloc n/a" : "alloc -";
+        for (int phase = 0; phase < PHASES; phase++){
+            phase_texts[phase] = FrameTimings.getName(phase)+" -";
+            phase_bars[phase] = 0;
+        }
+    }
+
+    private void startPeriod(long now){
+        period_start = now;
+        period_frames = 0;
+        period_allocated = allocations == null ? 0 : allocations.getAllocatedBytes();
+        for (int phase = 0; phase < PHASES; phase++)
+            period_phases[phase] = 0;
+    }
+
+    /**
+     * Adds the frame rendered before this one.
+     */
+    private void measure(long now){
+        long interval = now - last_render;
+        intervals[next_interval] = interval;
+        graph[next_interval] = (int) Math.min(interval * GRAPH_HEIGHT / (2 * BUDGET_NANOS), GRAPH_HEIGHT);
+        next_interval = (next_interval + 1) % GRAPH_FRAMES;
+        FrameTimings timings = loop.getFrameTimings();
+        if (timings != null){
+            for (int phase = 0; phase < PHASES; phase++)
+                period_phases[phase] += timings.getLast(phase);
+        }
+        if (++period_frames < UPDATE_FRAMES)
+            return;
+        // Update the texts and bars:
+        long elapsed = now - period_start;
+        fps_text = (period_frames * 1000000000L / elapsed)+" fps";
+        if (allocations != null){
+            long allocated = allocations.getAllocatedBytes() - period_allocated;
+            allocation_text = "alloc "+(allocated * 1000000000L / elapsed / 1024)+" KB/s";
+        }
+        for (int phase = 0; phase < PHASES; phase++){
+            long average = period_phases[phase] / period_frames;
+            phase_texts[phase] = FrameTimings.getName(phase)+" "+(average / 1000)+"us";
+            phase_bars[phase] = (int) Math.min(average * BAR_WIDTH / BUDGET_NANOS, BAR_WIDTH);
+            if (average > 0 && phase_bars[phase] == 0)
+                phase_bars[phase] = 1;
+        }
+        startPeriod(now);
+    }
+
+    /**
+     * Draws the overlay, grouping the calls by their color.
+     */
+    private void draw(Canvas c){
+        int graph_x = x + PADDING;
+        int graph_bottom = y + PADDING + LINE_HEIGHT + GRAPH_HEIGHT;
+        int bars_y = graph_bottom + PADDING;
+        c.setColor(BOX_COLOR);
+        c.fillRect(x, y, WIDTH, HEIGHT);
+        // The graph, oldest frame first:
+        c.setColor(FAST_COLOR);
+        for (int i = 0; i < GRAPH_FRAMES; i++){
+            int frame = (next_interval + i) % GRAPH_FRAMES;
+            if (intervals[frame] <= BUDGET_NANOS * 3 / 2)
+                c.fillRect(graph_x + i * GRAPH_BAR, graph_bottom - graph[frame], GRAPH_BAR, graph[frame]);
+        }
+        c.setColor(SLOW_COLOR);
+        for (int i = 0; i < GRAPH_FRAMES; i++){
+            int frame = (next_interval + i) % GRAPH_FRAMES;
+            if (intervals[frame] > BUDGET_NANOS * 3 / 2)
+                c.fillRect(graph_x + i * GRAPH_BAR, graph_bottom - graph[frame], GRAPH_BAR, graph[frame]);
+        }
+        c.setColor(BUDGET_COLOR);
+        c.fillRect(graph_x, graph_bottom - GRAPH_HEIGHT / 2, GRAPH_WIDTH, 1);
+        // The phases behind their texts, a full budget wide:
+        c.setColor(BAR_COLOR);
+        for (int phase = 0; phase < PHASES; phase++)
+            c.fillRect(graph_x, bars_y + phase * LINE_HEIGHT + 2, phase_bars[phase], LINE_HEIGHT - 4);
+        c.setColor(TEXT_COLOR);
+        c.setFont(FONT);
+        c.drawString(fps_text, graph_x, y + PADDING + LINE_HEIGHT - 2);
+        for (int phase = 0; phase < PHASES; phase++)
+            c.drawString(phase_texts[phase], graph_x, bars_y + (phase + 1) * LINE_HEIGHT - 2);
+        c.drawString(allocation_text, graph_x, bars_y + (PHASES + 1) * LINE_HEIGHT - 2);
+    }
+}
@@ -0,0 +1,217 @@
+package org.ita23.pacman.game;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Schedules tasks for execution after a given amount of game-time.</p>
+ * Unlike a {@code java.util.Timer}, the scheduler does not start any
+ *  threads and doesn't look at the wall-clock. Instead, time is measured in
+ *  frames and only progresses when {@code tick()} is called by it's owner.
+ *  All tasks are therefore run on the thread running the game and pause
+ *  naturally when the owner stops ticking, e.g. when the game is frozen.</p>
+ * Pending tasks are kept ordered by the frame they are due on. Tasks due on
+ *  the same frame run in the order they were scheduled in.
+ * @author Lukas Knuth
+ * @version 1.0
+ * @see GameLoop#getScheduler()
+ * @see GameLoop#getFrameScheduler()
+ */
+public class Scheduler {
+
+    /** The number of frames this scheduler was ticked */
+    private long frame;
+    /** The number of pending tasks */
+    private int size;
+    /** The frames the pending tasks are due on, in ascending order */
+    private long[] due;
+    /** The events to notify for the pending tasks */
+    private TimerEvent[] events;
+    /** The pending tasks */
+    private int[] tasks;
+
+    /**
+     * Create a new scheduler without any pending tasks.
+     */
+    public Scheduler(){
+        due = new long[8];
+        events = new TimerEvent[8];
+        tasks = new int[8];
+    }
+
+    /**
+     * Converts the given time to the (rounded up) amount of frames it takes.
+     * @param millis the time in milliseconds.
+     * @return the amount of frames rendered in the given time.
+     */
+    public static int toFrames(int millis){
+        return (millis * GameLoop.FRAMES_PER_SECOND + 999) / 1000;
+    }
+
+    /**
+     * Schedules the given task for execution after the given amount of time.
+     * @param event the event to notify when the task is due.
+     * @param task the task to pass to the event.
+     * @param delay_millis the time to wait in milliseconds.
+     */
+    public void schedule(TimerEvent event, int task, int delay_millis){
+        if (delay_millis < 0)
+            throw new IllegalArgumentException("Delay can't be < 0");
+        if (size == due.length){
+            due = Arrays.copyOf(due, size * 2);
+            events = Arrays.copyOf(events, size * 2);
+            tasks = Arrays.copyOf(tasks, size * 2);
+        }
+        long when = frame + toFrames(delay_millis);
+        // Insert after every task which is due at the same time or earlier:
+        int index = size;
+        while (index > 0 && due[index-1] > when)
+            index--;
+        System.arraycopy(due, index, due, index+1, size-index);
+        System.arraycopy(events, index, events, index+1, size-index);
+        System.arraycopy(tasks, index, tasks, index+1, size-index);
+        due[index] = when;
+        events[index] = event;
+        tasks[index] = task;
+        size++;
+    }
+
+    /**
+     * Advances the time by one frame and runs all tasks which are due.</p>
+     * Tasks may schedule new tasks or {@code clear()} this scheduler while
+     *  being run.
+     */
+    public void tick(){
+        frame++;
+        while (size > 0 && due[0] <= frame){
+            TimerEvent event = events[0];
+            int task = tasks[0];
+            // Remove before running, the task might change the schedule:
+            size--;
+            System.arraycopy(due, 1, due, 0, size);
+            System.arraycopy(events, 1, events, 0, size);
+            System.arraycopy(tasks, 1, tasks, 0, size);
+            events[size] = null;
+            event.timerExpired(task);
+        }
+    }
+
+    /**
+     * Get the amount of upcoming ticks, in which no task will be due.
+     * @return the amount of idle ticks, {@code Integer.MAX_VALUE} if nothing
+     *  is scheduled at all.
+     */
+    public int getIdleFrames(){
+        if (size == 0) return Integer.MAX_VALUE;
+        return (int) Math.max(0, Math.min(Integer.MAX_VALUE, due[0] - frame - 1));
+    }
+
+    /**
+     * Advances the time by the given amount of frames at once, without any
+     *  task becoming due.
+     * @param frames the amount of frames to skip.
+     * @throws IllegalArgumentException if a task would be due in between.
+     * @see #getIdleFrames()
+     */
+    public void skip(int frames){
+        if (frames < 0 || frames > getIdleFrames())
+            throw new IllegalArgumentException("Can't skip "+frames+" frames, a task is due before");
+        frame += frames;
+    }
+
+    /**
+     * Cancels all pending tasks.
+     */
+    public void clear(){
+        for (int i = 0; i < size; i++)
+            events[i] = null;
+        size = 0;
+    }
+
+    /**
+     * Get the number of tasks which are scheduled but not yet run.
+     * @return the number of pending tasks.
+     */
+    public int getPendingCount(){
+        return size;
+    }
+
+    /**
+     * Get the number of frames this scheduler was ticked.
+     * @return the current frame.
+     */
+    public long getFrame(){
+        return frame;
+    }
+
+    /**
+     * Get a hash of all pending tasks: the frames left until each one is due,
+     *  it's event and the task. Like snapshots, the events are identified by
+     *  their index, so equal games have equal hashes. The frames ticked so far
+     *  are not part of the hash.
+     * @param loop the game-loop all {@code TimerEvent}s of the pending tasks are
+     *  registered with.
+     * @return the hash of the pending tasks.
+     * @see Zobrist
+     */
+    public long getStateHash(GameLoop loop){
+        long hash = size;
+        for (int i = 0; i < size; i++){
+            hash = Zobrist.mix(hash, due[i] - frame);
+            hash = Zobrist.mix(hash, (long) loop.indexOfTimerEvent(events[i]) << 32 | (tasks[i] & 0xFFFFFFFFL));
+        }
+        return hash;
+    }
+
+    /**
+     * Get the amount of bytes {@code writeSnapshot()} will currently write.
+     * @return the size of the snapshot in bytes.
+     */
+    public int getSnapshotSize(){
+        return 8 + 2 + size * (4 + 1 + 4);
+    }
+
+    /**
+     * Writes the current frame and all pending tasks into the given buffer.
+     * @param out the buffer to write to.
+     * @param loop the game-loop all {@code TimerEvent}s of the pending tasks are
+     *  registered with. Their index is written instead of the event.
+     * @throws IllegalStateException if an event is not registered with the loop.
+     * @see GameLoop#addTimerEvent(TimerEvent)
+     */
+    public void writeSnapshot(ByteBuffer out, GameLoop loop){
+        out.putLong(frame);
+        out.putShort((short) size);
+        for (int i = 0; i < size; i++){
+            int index = loop.indexOfTimerEvent(events[i]);
+            if (index < 0)
+                throw new IllegalStateException("TimerEvent is not registered with the GameLoop: "+events[i]);
+            out.putInt((int) (due[i] - frame));
+            out.put((byte) index);
+            out.putInt(tasks[i]);
+        }
+    }
+
+    /**
+     * Replaces the frame and all pending tasks with the ones from the given buffer.
+     * @param in the buffer to read from.
+     * @param loop the game-loop to look up the {@code TimerEvent}s with.
+     * @see #writeSnapshot(ByteBuffer, GameLoop)
+     */
+    public void readSnapshot(ByteBuffer in, GameLoop loop){
+        clear();
+        frame = in.getLong();
+        int count = in.getShort();
+        if (count > due.length){
+            due = new long[count];
+            events = new TimerEvent[count];
+            tasks = new int[count];
+        }
+        for (int i = 0; i < count; i++){
+            due[i] = frame + in.getInt();
+            events[i] = loop.getTimerEvent(in.get());
+            tasks[i] = in.getInt();
+        }
+        size = count;
+    }
+}
@@ -0,0 +1,36 @@
+package org.ita23.pacman.game;
+
+/**
+ * Describes an object whose work in the upcoming frames can be done all at
+ *  once, as long as it doesn't make any decisions in them.</p>
+ * Figures for example only think about where to go when they reach the
+ *  next chunk. In the frames in between, they just keep moving in a straight
+ *  line, which doesn't need to be simulated frame by frame.</p>
+ * If every {@code InputEvent}, {@code CollusionEvent} and {@code MovementEvent}
+ *  of a game is skippable, the {@code GameLoop} can skip ahead to the next
+ *  frame in which anything is decided.
+ * @author Lukas Knuth
+ * @version 1.0
+ * @see GameLoop#simulateTile(InputEvent.JoystickState, int)
+ */
+public interface SkippableEvent {
+
+    /**
+     * Get the amount of upcoming frames, in which this object doesn't make
+     *  any decisions (and doesn't react to any other object).
+     * @param tester the collusion-test of the current map, e.g. to check what's
+     *  on the chunk the object is on.
+     * @return the amount of frames that can be skipped, {@code 0} if the
+     *  next frame needs to be simulated.
+     */
+    public int getSkippableFrames(CollusionTest tester);
+
+    /**
+     * Advances this object by the given amount of frames, ending up in the
+     *  exact same state as if they had been simulated, given the same input
+     *  as in the last simulated frame.
+     * @param frames the amount of frames to skip, never more than
+     *  {@code getSkippableFrames()}.
+     */
+    public void skipFrames(int frames);
+}
@@ -0,0 +1,41 @@
+package org.ita23.pacman.game;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Describes an object, whose state can be written into a snapshot and be
+ *  restored from it later on.</p>
+ * Only the state which changes while playing is written, e.g. positions,
+ *  modes and counters. Everything that is set up once (images, listeners,
+ *  the walls of the maze) is expected to already be in place when restoring,
+ *  which is the case for any game created the same way.</p>
+ * Snapshots are binary, in the byte-order of the given buffer. Restoring
+ *  must read exactly what was written, in the same order.
+ * @author Lukas Knuth
+ * @version 1.0
+ */
+public interface Snapshotable {
+
+    /**
+     * Get the amount of bytes {@code writeSnapshot()} will currently write.
+     * @return the size of the snapshot in bytes.
+     */
+    public int getSnapshotSize();
+
+    /**
+     * Write the current state into the given buffer, at it's current position.
+     * @param out the buffer to write to.
+     * @throws java.nio.BufferOverflowException if there is not enough space
+     *  left in the buffer.
+     */
+    public void writeSnapshot(ByteBuffer out);
+
+    /**
+     * Restore the state from the given buffer, as written by {@code writeSnapshot()}.
+     *  No listeners are notified about the restored state.
+     * @param in the buffer to read from, at it's current position.
+     * @throws java.nio.BufferUnderflowException if the buffer ends before the
+     *  snapshot does.
+     */
+    public void readSnapshot(ByteBuffer in);
+}
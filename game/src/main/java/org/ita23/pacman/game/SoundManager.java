@@ -11,23 +11,22 @@ import java.util.Map;
  * @author Lukas Knuth
  * @version 1.0
  */
-public enum SoundManager {
-
-    /** The instance to work with */
-    INSTANCE;
+public class SoundManager {
 
     /** A list of sounds which where started previously */
     private final Map<SoundResource, Boolean> started;
     /** The device to play sounds on, provided by the Platform */
     private Gramophone playbackDevice;
 
-    private SoundManager(){
+    public SoundManager(){
         started = new HashMap<SoundResource, Boolean>(8);
     }
 
     /**
      * Set the platform specific {@code Gramophone} implementation to play
-     * the actual {@code SoundResource}es.
+     * the actual {@code SoundResource}es.</p>
+     * If no {@code Gramophone} is set (for example when running headless),
+     *  all playback-requests are silently ignored.
      */
     public void setGramophone(Gramophone gramophone) {
         this.playbackDevice = gramophone;
@@ -55,6 +54,7 @@ public enum SoundManager {
      * @see #unpauseAll()
      */
     public void pauseAll(){
+        if (playbackDevice == null) return;
         // We crop the list of started sounds down to the ones _actually_ still playing
         Iterator<Map.Entry<SoundResource, Boolean>> iter = started.entrySet().iterator();
         while (iter.hasNext()){
@@ -77,9 +77,8 @@ public enum SoundManager {
      * @see org.ita23.pacman.game.SoundManager#loop(String, int)
      */
     public void play(SoundResource resource){
-        if (playbackDevice == null) {
-            throw new IllegalStateException("Gramophone was not set on SoundManger yet!");
-        }
+        // Running headless, nothing to play on:
+        if (playbackDevice == null) return;
         started.put(resource, false);
         playbackDevice.play(resource);
     }
@@ -93,9 +92,8 @@ public enum SoundManager {
      * @see org.ita23.pacman.game.SoundManager#stop(String)
      */
     public void loop(SoundResource resource){
-        if (playbackDevice == null) {
-            throw new IllegalStateException("Gramophone was not set on SoundManger yet!");
-        }
+        // Running headless, nothing to play on:
+        if (playbackDevice == null) return;
         // Don't restart the loop if the clip is already playing.
         if (started.get(resource) == null || started.get(resource) == false) {
             started.put(resource, true);
@@ -113,9 +111,8 @@ public enum SoundManager {
      * @param resource the sound resource to stop.
      */
     public void stop(SoundResource resource){
-        if (playbackDevice == null) {
-            throw new IllegalStateException("Gramophone was not set on SoundManger yet!");
-        }
+        // Running headless, nothing to play on:
+        if (playbackDevice == null) return;
         started.remove(resource);
         playbackDevice.stop(resource);
     }
@@ -0,0 +1,150 @@
+package org.ita23.pacman.game;
+
+/**
+ * Counts how often durations (in nanoseconds) of a certain size occurred, to
+ *  get their percentiles later on.</p>
+ * Durations are counted in buckets, which grow with the size of the duration:
+ *  every power of two is split into {@code SUB_BUCKETS} equally sized buckets.
+ *  Percentiles are therefore precise to about 6%, while recording a duration
+ *  only increments a counter and never allocates.</p>
+ * Instances are not synchronized. Reading from another thread than the one
+ *  recording may see a duration only partially counted, which is fine for
+ *  monitoring.
+ * @author Lukas Knuth
+ * @version 1.0
+ */
+public class TimeHistogram {
+
+    /** The bits of every duration, which are used to pick the bucket within it's power of two */
+    private static final int SUB_BUCKET_BITS = 4;
+    /** The number of buckets every power of two is split into */
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    /** Enough buckets for every positive {@code long} */
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    /** The number of durations counted in every bucket */
+    private final long[] counts;
+    /** The number of counted durations */
+    private long count;
+    /** The sum of all counted durations */
+    private long sum;
+    /** The longest counted duration */
+    private long max;
+
+    /**
+     * Creates a new, empty histogram.
+     */
+    public TimeHistogram(){
+        counts = new long[BUCKETS];
+    }
+
+    /**
+     * Counts a single duration.
+     * @param nanos the duration in nanoseconds. Negative durations are counted
+     *  as {@code 0}.
+     */
+    public void record(long nanos){
+        if (nanos < 0) nanos = 0;
+        counts[bucketOf(nanos)]++;
+        count++;
+        sum += nanos;
+        if (nanos > max) max = nanos;
+    }
+
+    /**
+     * Removes all counted durations.
+     */
+    public void reset(){
+        for (int i = 0; i < BUCKETS; i++)
+            counts[i] = 0;
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    /**
+     * Get the number of counted durations.
+     * @return the number of durations.
+     */
+    public long getCount(){
+        return count;
+    }
+
+    /**
+     * Get the longest counted duration.
+     * @return the duration in nanoseconds, {@code 0} if nothing was counted.
+     */
+    public long getMax(){
+        return max;
+    }
+
+    /**
+     * Get the average of all counted durations.
+     * @return the average in nanoseconds, {@code 0} if nothing was counted.
+     */
+    public long getMean(){
+        return count == 0 ? 0 : sum / count;
+    }
+
+    /**
+     * Get the duration, which the given percentage of all counted durations
+     *  didn't exceed.
+     * @param percentile the percentile, between {@code 0} and {@code 100}, e.g.
+     *  {@code 99.9}.
+     * @return the upper bound of the bucket holding the percentile in nanoseconds,
+     *  but never more than {@code getMax()}. {@code 0} if nothing was counted.
+     */
+    public long getPercentile(double percentile){
+        if (percentile < 0 || percentile > 100)
+            throw new IllegalArgumentException("Percentile must be between 0 and 100, was "+percentile);
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++){
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(upperBoundOf(i), max);
+        }
+        return max;
+    }
+
+    /**
+     * Lists the count, mean, percentiles and maximum of the counted durations,
+     *  in microseconds.
+     * @return the summary.
+     */
+    @Override
+    public String toString(){
+        return "count="+count+", mean="+micros(getMean())+", p50="+micros(getPercentile(50))
+                +", p90="+micros(getPercentile(90))+", p99="+micros(getPercentile(99))
+                +", p99.9="+micros(getPercentile(99.9))+", max="+micros(max)+" (us)";
+    }
+
+    private static String micros(long nanos){
+        long tenths = nanos / 100;
+        return (tenths / 10)+"."+(tenths % 10);
+    }
+
+    /**
+     * Get the index of the bucket, the given duration is counted in.
+     */
+    private static int bucketOf(long nanos){
+        if (nanos < SUB_BUCKETS)
+            return (int) nanos;
+        int exponent = 63 - Long.numberOfLeadingZeros(nanos);
+        int sub_bucket = (int) (nanos >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub_bucket;
+    }
+
+    /**
+     * Get the largest duration, which is counted in the given bucket.
+     */
+    private static long upperBoundOf(int bucket){
+        if (bucket < SUB_BUCKETS)
+            return bucket;
+        int exponent = bucket / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+        long sub_bucket = bucket % SUB_BUCKETS;
+        long lower = (1L << exponent) | (sub_bucket << (exponent - SUB_BUCKET_BITS));
+        return lower + (1L << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
@@ -0,0 +1,22 @@
+package org.ita23.pacman.game;
+
+/**
+ * Describes an object which schedules tasks on a {@code Scheduler} and wants
+ *  to be notified when they are due.</p>
+ * Tasks are plain numbers, defined by the implementing class. This way a
+ *  pending task holds no reference to any closure and can be inspected,
+ *  cancelled and copied without knowing what it actually does.
+ * @author Lukas Knuth
+ * @version 1.0
+ * @see Scheduler
+ */
+public interface TimerEvent {
+
+    /**
+     * This method will be called by the {@code Scheduler} when a previously
+     *  scheduled task is due.
+     * @param task the task, as given to the {@code schedule()}-method.
+     * @see Scheduler#schedule(TimerEvent, int, int)
+     */
+    public void timerExpired(int task);
+}
@@ -0,0 +1,48 @@
+package org.ita23.pacman.game;
+
+/**
+ * Helps building 64bit hashes of the game-state, which can be updated
+ *  incrementally and compared in constant time.</p>
+ * Large, mostly unchanging parts of the state (like the chunks of a map) use
+ *  a table of random keys, one per position and value. Their hash is the XOR
+ *  of the keys of all current values, so changing one value only takes two
+ *  XORs: one to remove the old key, one to add the new one.</p>
+ * Small parts of the state (like a figures position) are simply mixed into a
+ *  hash on demand, using {@code mix()}.</p>
+ * All keys are the same on every run, so hashes can be compared between
+ *  different games and JVMs.
+ * @author Lukas Knuth
+ * @version 1.0
+ */
+public final class Zobrist {
+
+    /** Added before mixing, so mixing zeros doesn't stay zero */
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    private Zobrist(){}
+
+    /**
+     * Creates a table of random keys.
+     * @param count the amount of keys.
+     * @param salt makes the keys of different tables differ.
+     * @return the keys, the same for the same salt on every run.
+     */
+    public static long[] createKeys(int count, long salt){
+        GameRandom random = new GameRandom(salt);
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++)
+            keys[i] = random.nextLong();
+        return keys;
+    }
+
+    /**
+     * Mixes the given value into the hash. The order in which values are
+     *  mixed in matters.
+     * @param hash the hash so far.
+     * @param value the value to add to the hash.
+     * @return the new hash.
+     */
+    public static long mix(long hash, long value){
+        return GameRandom.mix64((hash ^ value) + GOLDEN_GAMMA);
+    }
+}
@@ -6,7 +6,7 @@ import org.ita23.pacman.game.*;
 import org.ita23.pacman.game.Canvas;
 import org.ita23.pacman.game.Color;
 
-import java.util.TimerTask;
+import java.nio.ByteBuffer;
 
 /**
  * This is a {@code Map}-implementation, which divides the game-field
@@ -15,7 +15,7 @@ import java.util.TimerTask;
  * @author Fabain Bottler
  * @version 1.0
  */
-public class ChunkedMap implements Map, RenderEvent, StateListener, FoodListener{
+public class ChunkedMap implements Map, RenderEvent, StateListener, FoodListener, TimerEvent, Snapshotable{
 
     /** The background-color for all elements */
     public static final Color BACKGROUND_COLOR = new Color(3,3,3);
@@ -30,8 +30,44 @@ public class ChunkedMap implements Map, RenderEvent, StateListener, FoodListener
         
         public static final int CHUNK_SIZE = 16;
     }
-    /** The game-field */
-    private final Chunk[][] field;
+    /** The width of the game-field in chunks */
+    private static final int WIDTH = 28;
+    /** The height of the game-field in chunks */
+    private static final int HEIGHT = 31;
+    /** The chunk pacman starts on */
+    private static final int START_X = 13;
+    private static final int START_Y = 23;
+    /** All chunks, indexed by their ordinal */
+    private static final Chunk[] CHUNKS = Chunk.values();
+    /** The codes of the chunks, as returned by {@code getChunkCode()} */
+    private static final int POINT_CODE = Chunk.POINT.ordinal();
+    private static final int BALL_CODE = Chunk.BALL.ordinal();
+    private static final int BLOCK_CODE = Chunk.BLOCK.ordinal();
+    private static final int FRUIT_CODE = Chunk.FRUIT.ordinal();
+    private static final int DOOR_CODE = Chunk.CAGE_DOOR.ordinal();
+    /** The Zobrist-keys for every {@code Chunk} on every position of the field */
+    private static final long[] CHUNK_KEYS = Zobrist.createKeys(WIDTH*HEIGHT*CHUNKS.length, 0x4d4150L);
+
+    /**
+     * The game-field, one {@code Chunk}-ordinal per chunk, row by row. Chunks
+     *  with food on them are {@code NOTHING} here, the food is stored in the
+     *  {@code pellets} and {@code energizers} bit-sets.
+     */
+    private byte[] field;
+    /** One bit per chunk, set if there is a point on it */
+    private long[] pellets;
+    /** One bit per chunk, set if there is a ball (energizer) on it */
+    private long[] energizers;
+    /**
+     * Created together with the {@code field} and food bit-sets and shared by
+     *  every map using them. Once a map is forked, they're shared and must not
+     *  be changed anymore: the map changing a chunk first copies them.
+     */
+    private ChunkOwnership ownership;
+    /** The Zobrist-hash of all chunks, updated whenever a chunk is changed */
+    private long chunk_hash;
+    /** The exits of and distances between all chunks, shared between maps */
+    private final MazeGraph maze;
 
     /** The start-point of the game */
     private final Point start_point;
@@ -45,32 +81,146 @@ public class ChunkedMap implements Map, RenderEvent, StateListener, FoodListener
 
     private final static int ZINDEX=2;
 
+    /** Task to remove the bonus-fruit from the map again */
+    private static final int TASK_REMOVE_FRUIT = 0;
+    /** Task to start the next round after the current one was won */
+    private static final int TASK_NEXT_ROUND = 1;
+    /** Task to reset the map after the game was lost */
+    private static final int TASK_RESET = 2;
+
     private final int w;
     private final int h;
 
+    /** The game-loop of the game this map is played in */
+    private final GameLoop loop;
+    /** Plays the sounds of the game this map is played in */
+    private final SoundManager sound;
+
     /**
      * Construct a Map with the given size.
      * @param width the width of the Map in pixel.
      * @param height the height of the Map in pixel.
+     * @param loop the game-loop of the game, used to freeze it at the end of a round.
+     * @param state the state of the game, notifying the map about eaten food.
+     * @param sound plays the sounds of the game.
      */
-    public ChunkedMap(int width, int height){
+    public ChunkedMap(int width, int height, GameLoop loop, GameState state, SoundManager sound){
         // Store the field-sizes.
         w= width;
         h = height;
+        this.loop = loop;
+        this.sound = sound;
         // Create the field and initialize the chunks:
-        field = new Chunk[28][31];
+        field = new byte[WIDTH*HEIGHT];
+        pellets = new long[(WIDTH*HEIGHT+63)/64];
+        energizers = new long[(WIDTH*HEIGHT+63)/64];
+        ownership = new ChunkOwnership();
+        rehashChunks();
         // Create the maze:
         setupMaze();
+        maze = MazeGraph.forField(WIDTH, HEIGHT, field, START_X, START_Y);
         // Load the maze-image:
         background = ImageResource.MAZE;
         cherry = ImageResource.CHERRY;
         // Set the point for the start:
-        start_point = new Point(13*Chunk.CHUNK_SIZE, 23*Chunk.CHUNK_SIZE+GameState.MAP_SPACER);
+        start_point = new Point(START_X*Chunk.CHUNK_SIZE, START_Y*Chunk.CHUNK_SIZE+GameState.MAP_SPACER);
         // Add the cage for the ghosts:
         cage_point = new Point(10*Chunk.CHUNK_SIZE, 12*Chunk.CHUNK_SIZE+GameState.MAP_SPACER);
         // Register self for the "round-end" event:
-        GameState.INSTANCE.addStateListener(this);
-        GameState.INSTANCE.addFoodListener(this);
+        state.addStateListener(this);
+        state.addFoodListener(this);
+        state.setMap(this);
+        loop.addTimerEvent(this);
+    }
+
+    /**
+     * Create a copy of the given map, for a forked game. All chunks are shared
+     *  with the original map, until either of them changes a chunk.</p>
+     * The original map is only read, except for marking it's chunks as shared,
+     *  so any number of maps can be forked from it at the same time.
+     * @param original the map to copy.
+     * @param loop the game-loop of the forked game.
+     * @param state the state of the forked game.
+     * @param sound plays the sounds of the forked game.
+     */
+    private ChunkedMap(ChunkedMap original, GameLoop loop, GameState state, SoundManager sound){
+        w = original.w;
+        h = original.h;
+        this.loop = loop;
+        this.sound = sound;
+        // Share the chunks (copy on write):
+        ChunkOwnership shared = original.ownership;
+        shared.shared = true;
+        ownership = shared;
+        field = original.field;
+        pellets = original.pellets;
+        energizers = original.energizers;
+        chunk_hash = original.chunk_hash;
+        food_counter = original.food_counter;
+        // Everything else never changes:
+        maze = original.maze;
+        background = original.background;
+        cherry = original.cherry;
+        start_point = original.start_point;
+        cage_point = original.cage_point;
+        state.addStateListener(this);
+        state.addFoodListener(this);
+        state.setMap(this);
+        loop.addTimerEvent(this);
+    }
+
+    /**
+     * Creates a copy of this map for a forked game, which continues
+     *  independently from this one.</p>
+     * This is cheap: the chunks are only copied when either map changes them
+     *  the first time, the graph of the maze is never copied.
+     * @param loop the game-loop of the forked game.
+     * @param state the state of the forked game.
+     * @param sound plays the sounds of the forked game.
+     * @return the forked map.
+     */
+    public ChunkedMap fork(GameLoop loop, GameState state, SoundManager sound){
+        return new ChunkedMap(this, loop, state, sound);
+    }
+
+    /**
+     * Copies the chunks, if they are still shared with another map. Must be
+     *  called before any chunk is changed.
+     */
+    private void ownChunks(){
+        if (ownership.shared){
+            field = field.clone();
+            pellets = pellets.clone();
+            energizers = energizers.clone();
+            ownership = new ChunkOwnership();
+        }
+    }
+
+    /**
+     * Marks the chunks of one or more maps as shared.
+     */
+    private static class ChunkOwnership {
+        /** Only ever set (by forking), never reset, so forks may set it concurrently */
+        private volatile boolean shared;
+    }
+
+    /**
+     * Calculates the hash of all chunks from scratch.
+     */
+    private void rehashChunks(){
+        chunk_hash = 0;
+        for (int index = 0; index < field.length; index++)
+            chunk_hash ^= CHUNK_KEYS[index*CHUNKS.length + getChunkCode(index % WIDTH, index / WIDTH)];
+    }
+
+    /**
+     * Get the hash of all chunks on this map, e.g. which food is left. This is
+     *  kept up to date whenever a chunk changes, so it's cheap to call.
+     * @return the Zobrist-hash of the chunks.
+     * @see Zobrist
+     */
+    public long getStateHash(){
+        return Zobrist.mix(chunk_hash, food_counter);
     }
 
     /**
@@ -79,9 +229,9 @@ public class ChunkedMap implements Map, RenderEvent, StateListener, FoodListener
      */
     private void setupMaze(){
         // Initialize it:
-        for (int x = 0; x < field.length; x++)
-            for (int y = 0; y < field[0].length; y++)
-                field[x][y] = Chunk.POINT;
+        for (int x = 0; x < WIDTH; x++)
+            for (int y = 0; y < HEIGHT; y++)
+                setChunk(x, y, Chunk.POINT);
         // Add the level boundary:
         addLevelBoundary();
         // From top to the bottom:
@@ -294,14 +444,14 @@ public class ChunkedMap implements Map, RenderEvent, StateListener, FoodListener
      */
     private void addLevelBoundary(){
         // Top- and Bottom-boundary:
-        int[] y_rows = {0, field[0].length-1};
+        int[] y_rows = {0, HEIGHT-1};
         for (int y : y_rows)
-            for (int x = 0; x < field.length; x++)
+            for (int x = 0; x < WIDTH; x++)
                 setChunk(x, y, Chunk.BLOCK);
         // Left- and Right-boundary:
-        int[] x_rows = {0, field.length-1};
+        int[] x_rows = {0, WIDTH-1};
         for (int x : x_rows)
-            for (int y = 0; y < field[0].length; y++)
+            for (int y = 0; y < HEIGHT; y++)
                 setChunk(x, y, Chunk.BLOCK);
     }
 
@@ -309,6 +459,18 @@ public class ChunkedMap implements Map, RenderEvent, StateListener, FoodListener
         return ZINDEX;
     }
 
+    /**
+     * Get the amount of food (points and balls) which is left on the map and has
+     *  to be eaten to win the round.
+     * @return the amount of food left on the map.
+     */
+    public int getFoodLeft(){
+        int left = 0;
+        for (int i = 0; i < pellets.length; i++)
+            left += Long.bitCount(pellets[i]) + Long.bitCount(energizers[i]);
+        return left;
+    }
+
     /** Keeps track of how many regular food-units pacman ate */
     private int food_counter = 0;
     @Override
@@ -318,13 +480,7 @@ public class ChunkedMap implements Map, RenderEvent, StateListener, FoodListener
         }
         if (food_counter == 70 || food_counter == 170){
             setChunk(13, 17, Chunk.FRUIT);
-            new java.util.Timer().schedule(new TimerTask() {
-                @Override
-                public void run() {
-                    // Remove the cherry:
-                    setChunk(13, 17, Chunk.NOTHING);
-                }
-            }, 10*1000);
+            loop.getScheduler().schedule(this, TASK_REMOVE_FRUIT, 10*1000);
             // TODO The points for the fruit should depend on the current level.
             // TODO There are more fruits then only the cherrys!
         }
@@ -334,31 +490,62 @@ public class ChunkedMap implements Map, RenderEvent, StateListener, FoodListener
     public void stateChanged(States state) {
         if (state == States.ROUND_WON){
             // Pause and play melody:
-            GameLoop.INSTANCE.freeze();
-            SoundManager.INSTANCE.play(SoundResource.ROUND_OVER);
-            new java.util.Timer().schedule(new TimerTask() {
-                @Override
-                public void run() {
-                    GameLoop.INSTANCE.play();
-                    // Reset the balls and points:
-                    setupMaze();
-                    food_counter = 0;
-                    // TODO Blocks should blink when the game is won.
-                }
-            }, 5000);
+            loop.freeze();
+            sound.play(SoundResource.ROUND_OVER);
+            loop.getFrameScheduler().schedule(this, TASK_NEXT_ROUND, 5000);
         } else if (state == States.GAME_OVER){
             // Just reset the map after some time:
-            new java.util.Timer().schedule(new TimerTask() {
-                @Override
-                public void run() {
-                    // Reset the balls and points:
-                    setupMaze();
-                    food_counter = 0;
-                    GameLoop.INSTANCE.play();
-                    // TODO Any sound?
-                }
-            }, 2 * 1000);
+            loop.getFrameScheduler().schedule(this, TASK_RESET, 2 * 1000);
+        }
+    }
+
+    @Override
+    public void timerExpired(int task) {
+        if (task == TASK_REMOVE_FRUIT){
+            // Remove the cherry:
+            setChunk(13, 17, Chunk.NOTHING);
+        } else if (task == TASK_NEXT_ROUND){
+            loop.play();
+            // Reset the balls and points:
+            setupMaze();
+            food_counter = 0;
+            // TODO Blocks should blink when the game is won.
+        } else if (task == TASK_RESET){
+            // Reset the balls and points:
+            setupMaze();
+            food_counter = 0;
+            loop.play();
+            // TODO Any sound?
+        }
+    }
+
+    @Override
+    public int getSnapshotSize() {
+        return field.length + (pellets.length + energizers.length) * 8 + 4;
+    }
+
+    @Override
+    public void writeSnapshot(ByteBuffer out) {
+        out.put(field);
+        for (long bits : pellets) out.putLong(bits);
+        for (long bits : energizers) out.putLong(bits);
+        out.putInt(food_counter);
+    }
+
+    @Override
+    public void readSnapshot(ByteBuffer in) {
+        if (ownership.shared){
+            // Everything is overwritten, no need to copy the shared chunks:
+            field = new byte[field.length];
+            pellets = new long[pellets.length];
+            energizers = new long[energizers.length];
+            ownership = new ChunkOwnership();
         }
+        in.get(field);
+        for (int i = 0; i < pellets.length; i++) pellets[i] = in.getLong();
+        for (int i = 0; i < energizers.length; i++) energizers[i] = in.getLong();
+        food_counter = in.getInt();
+        rehashChunks();
     }
 
     @Override
@@ -366,11 +553,11 @@ public class ChunkedMap implements Map, RenderEvent, StateListener, FoodListener
         c.setColor(BACKGROUND_COLOR);
         c.fillRect(0, 0, w+16, h);
         c.drawImage(background, 7, GameState.MAP_SPACER+4,
-                field.length*Chunk.CHUNK_SIZE-4, field[0].length*Chunk.CHUNK_SIZE+2);
+                WIDTH*Chunk.CHUNK_SIZE-4, HEIGHT*Chunk.CHUNK_SIZE+2);
         int object_spacer = 10; // Pixels to be placed between the objects.
         // Draw the chunks:
-        for (int x = 0; x < field.length; x++)
-            for (int y = 0; y < field[0].length; y++){
+        for (int x = 0; x < WIDTH; x++)
+            for (int y = 0; y < HEIGHT; y++){
                 // Draw the objects
                 switch (getChunk(x, y)){
                     case POINT:
@@ -414,10 +601,27 @@ public class ChunkedMap implements Map, RenderEvent, StateListener, FoodListener
      * @return the {@code Chunk} on the specified point.
      */
     private Chunk getChunk(int x, int y){
-        if (x < 0 || x >= field.length || y < 0 || y >= field[0].length)
-            return Chunk.BLOCK;
+        return CHUNKS[getChunkCode(x, y)];
+    }
+
+    /**
+     * Same as {@code getChunk()}, but returns the ordinal of the {@code Chunk}
+     *  instead of the {@code Chunk} itself.
+     * @param x the X-Coordinate.
+     * @param y the Y-Coordinate.
+     * @return the ordinal of the {@code Chunk} on the specified point.
+     * @see #getChunk(int, int)
+     */
+    private int getChunkCode(int x, int y){
+        if (x < 0 || x >= WIDTH || y < 0 || y >= HEIGHT)
+            return BLOCK_CODE;
+        // Food is stored separately:
+        int index = y*WIDTH + x;
+        long bit = 1L << index;
+        if ((pellets[index >> 6] & bit) != 0) return POINT_CODE;
+        if ((energizers[index >> 6] & bit) != 0) return BALL_CODE;
         // Return the Chunk
-        return field[x][y];
+        return field[index];
     }
 
     /**
@@ -432,11 +636,50 @@ public class ChunkedMap implements Map, RenderEvent, StateListener, FoodListener
      *  invalid coordinates.
      */
     private void setChunk(int x, int y, Chunk object){
-        if (x < 0 || x >= field.length
-                || y < 0 || y >= field[0].length)
+        if (x < 0 || x >= WIDTH
+                || y < 0 || y >= HEIGHT)
             throw new IllegalArgumentException("Point is invalid: ("+x+"|"+y+")");
-        // Set the chunk-object:
-        field[x][y] = object;
+        ownChunks();
+        int index = y*WIDTH + x;
+        // Swap the key of the old chunk for the one of the new chunk:
+        chunk_hash ^= CHUNK_KEYS[index*CHUNKS.length + getChunkCode(x, y)]
+                ^ CHUNK_KEYS[index*CHUNKS.length + object.ordinal()];
+        long bit = 1L << index;
+        // Clear any food, then set the chunk-object:
+        pellets[index >> 6] &= ~bit;
+        energizers[index >> 6] &= ~bit;
+        if (object == Chunk.POINT){
+            pellets[index >> 6] |= bit;
+            field[index] = (byte) Chunk.NOTHING.ordinal();
+        } else if (object == Chunk.BALL){
+            energizers[index >> 6] |= bit;
+            field[index] = (byte) Chunk.NOTHING.ordinal();
+        } else {
+            field[index] = (byte) object.ordinal();
+        }
+    }
+
+    /**
+     * Get the graph of the maze, telling where figures can go from any chunk.
+     * @return the immutable graph of this maze.
+     */
+    public MazeGraph getMazeGraph(){
+        return maze;
+    }
+
+    /**
+     * Get the length of the shortest way between two chunks, including the
+     *  way through the jumpers.
+     * @param from_x the X-chunk to start on.
+     * @param from_y the Y-chunk to start on.
+     * @param to_x the X-chunk to go to.
+     * @param to_y the Y-chunk to go to.
+     * @return the amount of chunks to walk, or {@code -1} if one of the chunks
+     *  can't be walked on.
+     * @see MazeGraph#getDistance(int, int, int, int)
+     */
+    public int getMazeDistance(int from_x, int from_y, int to_x, int to_y){
+        return maze.getDistance(from_x, from_y, to_x, to_y);
     }
 
     /**
@@ -474,6 +717,17 @@ public class ChunkedMap implements Map, RenderEvent, StateListener, FoodListener
             return getChunk(chunk_x, chunk_y);
         }
 
+        /**
+         * Get the ordinal of the {@code Chunk} the figure is currently on.
+         * @param you_x the X-coordinate of the figure.
+         * @param you_y the Y-coordinate of the figure.
+         * @return the ordinal of the {@code Chunk} the figure is currently on.
+         */
+        private int getCode(int you_x, int you_y){
+            you_y -= GameState.MAP_SPACER;
+            return getChunkCode(you_x / Chunk.CHUNK_SIZE, you_y / Chunk.CHUNK_SIZE);
+        }
+
         /**
          * Get the {@code Chunk} the figure is currently on and replace it
          *  with the given replacement, if it matches the given {@code Chunk}.
@@ -555,6 +809,82 @@ public class ChunkedMap implements Map, RenderEvent, StateListener, FoodListener
             if (obj != null && obj == object) return true;
             return false;
         }
+
+        @Override
+        public int getObjectCode(int you_x, int you_y) {
+            return getCode(you_x, you_y);
+        }
+
+        /**
+         * Checks if the exits for the given position can be looked up in the
+         *  {@code MazeGraph}. This is not possible if the position (or it's
+         *  neighbours) are outside of the maze.
+         * @param you_x the X-coordinate of the figure.
+         * @param you_y the Y-coordinate of the figure.
+         * @return weather the exits can be looked up.
+         */
+        private boolean inMaze(int you_x, int you_y){
+            // Left and upper neighbours must not round towards zero:
+            return you_x >= Chunk.CHUNK_SIZE && you_x < WIDTH*Chunk.CHUNK_SIZE
+                    && you_y >= GameState.MAP_SPACER+Chunk.CHUNK_SIZE
+                    && you_y < GameState.MAP_SPACER+HEIGHT*Chunk.CHUNK_SIZE;
+        }
+
+        @Override
+        public int getOpenExits(int you_x, int you_y) {
+            if (inMaze(you_x, you_y))
+                return maze.getExits(you_x / Chunk.CHUNK_SIZE,
+                        (you_y - GameState.MAP_SPACER) / Chunk.CHUNK_SIZE);
+            // Probe the neighbours:
+            int exits = 0;
+            if (isOpen(getCode(you_x, you_y-Chunk.CHUNK_SIZE)))
+                exits |= NextDirection.UP.getMask();
+            if (isOpen(getCode(you_x, you_y+Chunk.CHUNK_SIZE)))
+                exits |= NextDirection.DOWN.getMask();
+            if (isOpen(getCode(you_x+Chunk.CHUNK_SIZE, you_y)))
+                exits |= NextDirection.RIGHT.getMask();
+            if (isOpen(getCode(you_x-Chunk.CHUNK_SIZE, you_y)))
+                exits |= NextDirection.LEFT.getMask();
+            return exits;
+        }
+
+        /**
+         * Checks if a figure can walk onto a chunk without running into a block
+         *  or through a door.
+         * @param code the ordinal of the {@code Chunk}.
+         * @return whether the chunk can be walked on.
+         */
+        private boolean isOpen(int code){
+            return code != BLOCK_CODE && code != DOOR_CODE;
+        }
+
+        @Override
+        public int getDoorExits(int you_x, int you_y) {
+            if (inMaze(you_x, you_y))
+                return maze.getDoorExits(you_x / Chunk.CHUNK_SIZE,
+                        (you_y - GameState.MAP_SPACER) / Chunk.CHUNK_SIZE);
+            // Probe the neighbours:
+            int doors = 0;
+            if (getCode(you_x, you_y-Chunk.CHUNK_SIZE) == DOOR_CODE)
+                doors |= NextDirection.UP.getMask();
+            if (getCode(you_x, you_y+Chunk.CHUNK_SIZE) == DOOR_CODE)
+                doors |= NextDirection.DOWN.getMask();
+            if (getCode(you_x+Chunk.CHUNK_SIZE, you_y) == DOOR_CODE)
+                doors |= NextDirection.RIGHT.getMask();
+            if (getCode(you_x-Chunk.CHUNK_SIZE, you_y) == DOOR_CODE)
+                doors |= NextDirection.LEFT.getMask();
+            return doors;
+        }
+
+        @Override
+        public int consume(int you_x, int you_y) {
+            int code = getCode(you_x, you_y);
+            if (code == POINT_CODE || code == BALL_CODE || code == FRUIT_CODE){
+                setChunk(you_x / Chunk.CHUNK_SIZE,
+                        (you_y - GameState.MAP_SPACER) / Chunk.CHUNK_SIZE, Chunk.NOTHING);
+            }
+            return code;
+        }
     };
 
     @Override
@@ -6,11 +6,13 @@ import org.ita23.pacman.game.RenderEvent;
 import org.ita23.pacman.game.Canvas;
 import org.ita23.pacman.game.Color;
 import org.ita23.pacman.game.Font;
+import org.ita23.pacman.game.Snapshotable;
+import org.ita23.pacman.game.TimerEvent;
+import org.ita23.pacman.game.Zobrist;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Timer;
-import java.util.TimerTask;
 
 /**
  * The current state of the game is stored in this class. This includes the current
@@ -32,10 +34,7 @@ import java.util.TimerTask;
  * @author Lukas Knuth
  * @version 1.0
  */
-public enum GameState implements RenderEvent, StateListener {
-    
-    /** The instance to work with */
-    INSTANCE;
+public class GameState implements RenderEvent, StateListener, TimerEvent, Snapshotable {
 
     /** The amount of pixels needed to draw the state */
     public static final int MAP_SPACER = 40;
@@ -48,10 +47,15 @@ public enum GameState implements RenderEvent, StateListener {
     /** The font to use, when added points should be shown on the game-field */
     public static final Font BONUS_POINTS_FONT = new Font("Arial", Font.Style.BOLD, 12);
 
-    /** The count of "eatable" items on the game-field */
-    private static final int EATABLE_ITEMS = 253;
+    /** Task to reset the game after it was lost */
+    private static final int TASK_RESET = 0;
+    /** Task to stop showing the last bonus-points */
+    private static final int TASK_HIDE_BONUS = 1;
+
     /** The current count of eaten items */
     private int food_eaten;
+    /** The map the game is played on, knowing how much food is left to eat */
+    private ChunkedMap map;
 
     /** The score-points of the current game */
     private int score;
@@ -78,10 +82,16 @@ public enum GameState implements RenderEvent, StateListener {
     /** Weather the game is currently over */
     private boolean game_over;
 
+    /** The game-loop of the game this state belongs to */
+    private final GameLoop loop;
+
     /**
-     * Singleton - Private constructor.
+     * Create the state for a new game.
+     * @param loop the game-loop of the game, used to freeze it when
+     *  the game is over.
      */
-    private GameState(){
+    public GameState(GameLoop loop){
+        this.loop = loop;
         game_over = false;
         this.score = 0;
         this.lives = 2;
@@ -90,31 +100,69 @@ public enum GameState implements RenderEvent, StateListener {
         foodListeners = new ArrayList<FoodListener>(2);
         // Register to own listener:
         addStateListener(this);
+        loop.addTimerEvent(this);
     }
 
     @Override
     public void stateChanged(States state) {
         if (state == States.GAME_OVER){
             game_over = true;
-            GameLoop.INSTANCE.freeze();
+            loop.freeze();
             // Reset points and lives:
-            new java.util.Timer().schedule(new TimerTask() {
-                @Override
-                public void run() {
-                    // Reset everything:
-                    food_eaten = 0;
-                    score = 0;
-                    lives = 2;
-                    game_over = false;
-                    GameLoop.INSTANCE.play();
-                }
-            }, 2 * 1000);
+            loop.getFrameScheduler().schedule(this, TASK_RESET, 2 * 1000);
         } else if (state == States.ROUND_WON){
             // Reset the food:
             food_eaten = 0;
         }
     }
 
+    @Override
+    public void timerExpired(int task) {
+        if (task == TASK_RESET){
+            // Reset everything:
+            food_eaten = 0;
+            score = 0;
+            lives = 2;
+            game_over = false;
+            loop.play();
+        } else if (task == TASK_HIDE_BONUS){
+            last_bonus_points = 0;
+        }
+    }
+
+    /**
+     * Get a hash of the score, lives and food eaten so far.
+     * @return the hash of this state.
+     * @see Zobrist
+     */
+    public long getStateHash(){
+        long hash = Zobrist.mix(score, lives);
+        return Zobrist.mix(hash, (long) food_eaten << 1 | (game_over ? 1 : 0));
+    }
+
+    @Override
+    public int getSnapshotSize() {
+        return 4 * 4 + 1;
+    }
+
+    @Override
+    public void writeSnapshot(ByteBuffer out) {
+        out.putInt(food_eaten);
+        out.putInt(score);
+        out.putInt(lives);
+        out.putInt(last_bonus_points);
+        out.put((byte) (game_over ? 1 : 0));
+    }
+
+    @Override
+    public void readSnapshot(ByteBuffer in) {
+        food_eaten = in.getInt();
+        score = in.getInt();
+        lives = in.getInt();
+        last_bonus_points = in.getInt();
+        game_over = in.get() != 0;
+    }
+
     @Override
     public void render(Canvas c) {
         // Render the current score:
@@ -130,7 +178,7 @@ public enum GameState implements RenderEvent, StateListener {
             c.fillArc((400+30*i), 20, 20, 20, 75+90, 30);
         }
         // Render the "pause"-message:
-        if (GameLoop.INSTANCE.isPaused()){
+        if (loop.isPaused()){
             c.setColor(Pacman.BODY_COLOR);
             c.setFont(PAUSE_FONT);
             c.drawString("READY!", 195, 332);
@@ -204,7 +252,7 @@ public enum GameState implements RenderEvent, StateListener {
         // Add to the counter:
         if (consumed != Food.BONUS)
             this.food_eaten++;
-        if (food_eaten == EATABLE_ITEMS){
+        if (consumed != Food.BONUS && map.getFoodLeft() == 0){
             for (StateListener listener : stateListeners)
                 listener.stateChanged(StateListener.States.ROUND_WON);
             return;
@@ -215,15 +263,19 @@ public enum GameState implements RenderEvent, StateListener {
         // If bonus was eaten, show the points on the game-field:
         if (consumed == Food.BONUS){
             last_bonus_points = consumed.points;
-            new Timer().schedule(new TimerTask() {
-                @Override
-                public void run() {
-                    last_bonus_points = 0;
-                }
-            }, 800);
+            loop.getFrameScheduler().schedule(this, TASK_HIDE_BONUS, 800);
         }
     }
 
+    /**
+     * Set the map the game is played on. The round is won once there is no
+     *  more food left on this map.
+     * @param map the map the game is played on.
+     */
+    public void setMap(ChunkedMap map){
+        this.map = map;
+    }
+
     /**
      * Adds a new {@code StateListener} to the list of registered listeners.
      * @param listener the new listener.
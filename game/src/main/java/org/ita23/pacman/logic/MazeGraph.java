@@ -0,0 +1,360 @@
+package org.ita23.pacman.logic;
+
+import org.ita23.pacman.game.CollusionTest.NextDirection;
+import org.ita23.pacman.logic.ChunkedMap.Chunk;
+
+import java.util.Arrays;
+
+/**
+ * An immutable graph of the maze, which tells for every chunk in which
+ *  directions a figure can move on and how far it is to any other chunk.</p>
+ * The graph only depends on the walls and doors of the maze, which never change
+ *  while playing. It is therefore build once, when the map is build, instead
+ *  of probing the neighbours of a chunk every time a figure needs to decide
+ *  where to go next.</p>
+ * Chunks are addressed in chunk-coordinates (not pixels). Chunks outside of the
+ *  maze are treated like blocks. The exits of the jumpers do <u>not</u> lead to
+ *  the other jumper, since figures are moved through them explicitly. The
+ *  distances between chunks however include the way through the jumpers.</p>
+ * Only the chunks a figure can reach from the start-point (through the jumpers
+ *  and the cage door) are walkable. The walled-off areas next to the tunnels
+ *  are treated like blocks.</p>
+ * Since the graph is immutable, all maps with the same walls share one graph,
+ *  see {@code forField()}.
+ * @author Lukas Knuth
+ * @version 1.0
+ * @see ChunkedMap#getMazeGraph()
+ */
+public final class MazeGraph {
+
+    /** All directions, indexed by their ordinal */
+    private static final NextDirection[] DIRECTIONS = NextDirection.values();
+    /** All chunks, indexed by their ordinal */
+    private static final Chunk[] CHUNKS = Chunk.values();
+    /** The distance between chunks which are not connected */
+    private static final int UNREACHABLE = 0xFF;
+
+    /** The graph which was build last, shared between all maps with the same walls */
+    private static MazeGraph shared;
+
+    /** The width of the maze in chunks */
+    private final int width;
+    /** The chunk every figure can be reached from */
+    private final int start;
+    /** The height of the maze in chunks */
+    private final int height;
+    /** The directions which are not blocked by a block or door, per chunk */
+    private final byte[] exits;
+    /** The directions which lead through a door, per chunk */
+    private final byte[] door_exits;
+    /** The walls, doors and jumpers of the maze, used to compare graphs */
+    private final byte[] layout;
+    /** The index of every chunk in the distance-table, or -1 if it can't be reached */
+    private final short[] node;
+    /** The amount of walkable (reachable) chunks */
+    private final int node_count;
+    /** The (unsigned) distances in chunks between all walkable chunks */
+    private final byte[] distance;
+
+    /**
+     * Get the graph for the given field. If the last graph build was for a
+     *  field with the same walls, that graph is returned instead of building
+     *  a new one.
+     * @param width the width of the maze in chunks.
+     * @param height the height of the maze in chunks.
+     * @param field the {@code Chunk}-ordinals of the maze, row by row.
+     * @param start_x the X-chunk of the start-point.
+     * @param start_y the Y-chunk of the start-point.
+     * @return the graph of the given maze.
+     * @throws IllegalArgumentException if the start-point is not walkable.
+     */
+    static synchronized MazeGraph forField(int width, int height, byte[] field, int start_x, int start_y){
+        byte[] layout = layoutOf(field);
+        if (shared == null || shared.width != width || shared.height != height
+                || shared.start != start_y*width + start_x || !Arrays.equals(shared.layout, layout)){
+            shared = new MazeGraph(width, height, field, layout, start_y*width + start_x);
+        }
+        return shared;
+    }
+
+    /**
+     * Strips everything from the field which doesn't matter for the graph.
+     * @param field the {@code Chunk}-ordinals of the maze.
+     * @return the layout of the maze.
+     */
+    private static byte[] layoutOf(byte[] field){
+        byte[] layout = new byte[field.length];
+        for (int i = 0; i < field.length; i++){
+            Chunk chunk = CHUNKS[field[i]];
+            if (chunk == Chunk.BLOCK || chunk == Chunk.CAGE_DOOR || chunk == Chunk.JUMPER)
+                layout[i] = (byte) chunk.ordinal();
+            else
+                layout[i] = (byte) Chunk.NOTHING.ordinal();
+        }
+        return layout;
+    }
+
+    /**
+     * Builds the graph from the given field.
+     * @param width the width of the maze in chunks.
+     * @param height the height of the maze in chunks.
+     * @param field the {@code Chunk}-ordinals of the maze, row by row.
+     * @param layout the layout of the field.
+     * @param start the index of the start-point in the field.
+     */
+    private MazeGraph(int width, int height, byte[] field, byte[] layout, int start){
+        if (start < 0 || start >= field.length || layout[start] == Chunk.BLOCK.ordinal())
+            throw new IllegalArgumentException("The start-point must be a walkable chunk of the maze");
+        this.width = width;
+        this.height = height;
+        this.layout = layout;
+        this.start = start;
+        exits = new byte[width*height];
+        door_exits = new byte[width*height];
+        // Find the exits of every chunk:
+        for (int y = 0; y < height; y++)
+            for (int x = 0; x < width; x++){
+                for (NextDirection d : DIRECTIONS){
+                    Chunk next = chunkAt(field, x + stepX(d), y + stepY(d));
+                    if (next == Chunk.CAGE_DOOR)
+                        door_exits[y*width + x] = (byte) (door_exits[y*width + x] | d.getMask());
+                    else if (next != Chunk.BLOCK)
+                        exits[y*width + x] = (byte) (exits[y*width + x] | d.getMask());
+                }
+            }
+        // Number the chunks which can be reached from the start:
+        int[] queue = new int[width*height];
+        node = new short[width*height];
+        Arrays.fill(node, (short) -1);
+        node_count = numberReachable(queue);
+        // Search the distances from every walkable chunk:
+        distance = new byte[node_count*node_count];
+        Arrays.fill(distance, (byte) UNREACHABLE);
+        for (int from = 0; from < node.length; from++)
+            if (node[from] >= 0) searchDistances(from, queue);
+    }
+
+    /**
+     * Numbers all chunks which can be reached from the start-point, by doing a
+     *  breadth-first search over the maze.
+     * @param queue a queue large enough for all chunks.
+     * @return the amount of numbered chunks.
+     */
+    private int numberReachable(int[] queue){
+        int count = 0;
+        int head = 0, tail = 0;
+        node[start] = (short) count++;
+        queue[tail++] = start;
+        while (head < tail){
+            int current = queue[head++];
+            int x = current % width;
+            int y = current / width;
+            int ways = exits[current] | door_exits[current];
+            for (NextDirection d : DIRECTIONS){
+                if ((ways & d.getMask()) == 0) continue;
+                int next = (y + stepY(d))*width + x + stepX(d);
+                if (node[next] < 0){
+                    node[next] = (short) count++;
+                    queue[tail++] = next;
+                }
+            }
+            int other = otherJumper(current);
+            if (other >= 0 && node[other] < 0){
+                node[other] = (short) count++;
+                queue[tail++] = other;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Get the jumper on the other side of the maze, if the given chunk is a jumper.
+     * @return the index of the other jumper, or {@code -1} if there is none.
+     */
+    private int otherJumper(int current){
+        if (layout[current] != Chunk.JUMPER.ordinal())
+            return -1;
+        int x = current % width;
+        int other = current - x + (width-1 - x);
+        return (other != current && layout[other] == Chunk.JUMPER.ordinal()) ? other : -1;
+    }
+
+    /**
+     * Fills the row of the distance-table for the given chunk, by doing a
+     *  breadth-first search over the maze.
+     * @param from the index of the chunk (in the field) to start from.
+     * @param queue a queue large enough for all chunks, to avoid allocation.
+     */
+    private void searchDistances(int from, int[] queue){
+        int row = node[from]*node_count;
+        int head = 0, tail = 0;
+        queue[tail++] = from;
+        distance[row + node[from]] = 0;
+        while (head < tail){
+            int current = queue[head++];
+            int walked = distance[row + node[current]] & 0xFF;
+            int x = current % width;
+            int y = current / width;
+            int ways = exits[current] | door_exits[current];
+            for (NextDirection d : DIRECTIONS){
+                if ((ways & d.getMask()) == 0) continue;
+                int next = (y + stepY(d))*width + x + stepX(d);
+                tail = visit(next, row, walked+1, queue, tail);
+            }
+            // The jumpers lead to the other side of the maze:
+            int other = otherJumper(current);
+            if (other >= 0)
+                tail = visit(other, row, walked+1, queue, tail);
+        }
+    }
+
+    /**
+     * Records the distance to the given chunk and queues it, if it wasn't
+     *  visited by the current search yet.
+     * @return the new tail of the queue.
+     */
+    private int visit(int next, int row, int walked, int[] queue, int tail){
+        if (node[next] < 0 || (distance[row + node[next]] & 0xFF) != UNREACHABLE)
+            return tail;
+        if (walked >= UNREACHABLE)
+            throw new IllegalStateException("The maze is too large for the distance-table");
+        distance[row + node[next]] = (byte) walked;
+        queue[tail++] = next;
+        return tail;
+    }
+
+    /**
+     * Get the {@code Chunk} on the given position of the field.
+     * @return the {@code Chunk}, or {@code BLOCK} if the position is outside
+     *  of the maze.
+     */
+    private Chunk chunkAt(byte[] field, int x, int y){
+        if (x < 0 || x >= width || y < 0 || y >= height)
+            return Chunk.BLOCK;
+        return CHUNKS[field[y*width + x]];
+    }
+
+    /**
+     * The change of the X-coordinate when moving one chunk into the given direction.
+     */
+    private static int stepX(NextDirection d){
+        if (d == NextDirection.RIGHT) return 1;
+        if (d == NextDirection.LEFT) return -1;
+        return 0;
+    }
+
+    /**
+     * The change of the Y-coordinate when moving one chunk into the given direction.
+     */
+    private static int stepY(NextDirection d){
+        if (d == NextDirection.DOWN) return 1;
+        if (d == NextDirection.UP) return -1;
+        return 0;
+    }
+
+    /**
+     * Checks if the given chunk-coordinates are inside of the maze.
+     * @param x the X-chunk.
+     * @param y the Y-chunk.
+     * @return weather the chunk is part of the maze.
+     */
+    public boolean contains(int x, int y){
+        return x >= 0 && x < width && y >= 0 && y < height;
+    }
+
+    /**
+     * Get the directions in which a figure can leave the given chunk, without
+     *  running into a block or through a door.
+     * @param x the X-chunk.
+     * @param y the Y-chunk.
+     * @return a mask of all open directions, see {@code NextDirection.getMask()}.
+     * @throws IndexOutOfBoundsException if the chunk is not part of the maze.
+     */
+    public int getExits(int x, int y){
+        checkBounds(x, y);
+        return exits[y*width + x];
+    }
+
+    /**
+     * Get the directions in which a figure would leave the given chunk through
+     *  a door.
+     * @param x the X-chunk.
+     * @param y the Y-chunk.
+     * @return a mask of all directions leading through a door.
+     * @throws IndexOutOfBoundsException if the chunk is not part of the maze.
+     */
+    public int getDoorExits(int x, int y){
+        checkBounds(x, y);
+        return door_exits[y*width + x];
+    }
+
+    /**
+     * Checks if the given chunk is a junction, e.g. a figure has more then two
+     *  directions to choose from.
+     * @param x the X-chunk.
+     * @param y the Y-chunk.
+     * @return weather the chunk is a junction.
+     */
+    public boolean isJunction(int x, int y){
+        return Integer.bitCount(getExits(x, y)) > 2;
+    }
+
+    /**
+     * Get the length of the shortest way between two chunks, including the way
+     *  through the jumpers and the cage door.
+     * @param from_x the X-chunk to start on.
+     * @param from_y the Y-chunk to start on.
+     * @param to_x the X-chunk to go to.
+     * @param to_y the Y-chunk to go to.
+     * @return the amount of chunks to walk, or {@code -1} if one of the chunks
+     *  is not walkable, e.g. a block or outside of the maze.
+     */
+    public int getDistance(int from_x, int from_y, int to_x, int to_y){
+        if (!contains(from_x, from_y) || !contains(to_x, to_y)) return -1;
+        int from = node[from_y*width + from_x];
+        int to = node[to_y*width + to_x];
+        if (from < 0 || to < 0) return -1;
+        int walked = distance[from*node_count + to] & 0xFF;
+        return walked == UNREACHABLE ? -1 : walked;
+    }
+
+    /**
+     * Checks if a figure can be on the given chunk, e.g. it's not a block and
+     *  can be reached from the start-point.
+     * @param x the X-chunk.
+     * @param y the Y-chunk.
+     * @return weather the chunk can be walked on.
+     */
+    public boolean isWalkable(int x, int y){
+        return contains(x, y) && node[y*width + x] >= 0;
+    }
+
+    /**
+     * Get the amount of chunks which can be walked on.
+     * @return the amount of walkable chunks.
+     */
+    public int getWalkableCount(){
+        return node_count;
+    }
+
+    private void checkBounds(int x, int y){
+        if (!contains(x, y))
+            throw new IndexOutOfBoundsException("Chunk is invalid: ("+x+"|"+y+")");
+    }
+
+    /**
+     * Get the width of the maze.
+     * @return the width in chunks.
+     */
+    public int getWidth(){
+        return width;
+    }
+
+    /**
+     * Get the height of the maze.
+     * @return the height in chunks.
+     */
+    public int getHeight(){
+        return height;
+    }
+}
@@ -17,8 +17,13 @@ public class LaunchScreen implements RenderEvent, InputEvent {
   private static final Color FONT_COLOR = new Color(255, 255, 87);
   private static final Color BOX_COLOR = new Color(0, 0, 0);
 
+  private final GameLoop loop;
   private boolean first_launch = true;
 
+  public LaunchScreen(GameLoop loop) {
+    this.loop = loop;
+  }
+
 	@Override
 	public void render(Canvas c) {
 	  if (this.first_launch) {
@@ -45,7 +50,7 @@ public class LaunchScreen implements RenderEvent, InputEvent {
 	public void joystickInput(JoystickState state) {
 	  if (this.first_launch && state != JoystickState.NEUTRAL) {
 	    this.first_launch = false;
-	    GameLoop.INSTANCE.play();
+	    loop.play();
 	  }
 	}
 }
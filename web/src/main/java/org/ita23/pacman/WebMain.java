@@ -1,9 +1,10 @@
 package org.ita23.pacman;
 
 import org.ita23.pacman.game.Canvas;
-import org.ita23.pacman.game.GameLoop;
 import org.ita23.pacman.game.InputEvent.JoystickState;
-import org.ita23.pacman.game.SoundManager;
+import org.ita23.pacman.game.InputRecorder;
+import org.ita23.pacman.game.PerformanceOverlay;
+import org.ita23.pacman.logic.StateListener;
 import org.teavm.jso.dom.events.EventListener;
 import org.teavm.jso.dom.events.KeyboardEvent;
 import org.teavm.jso.dom.events.TouchEvent;
@@ -14,12 +15,19 @@ import org.teavm.jso.browser.Window;
 import org.teavm.jso.canvas.CanvasRenderingContext2D;
 import org.teavm.jso.browser.AnimationFrameCallback;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+
 public class WebMain implements AnimationFrameCallback {
 
+  private GameSession session;
   private JoystickState last_input_state = JoystickState.NEUTRAL;
   private Canvas web_canvas;
   private TouchInput touch_input;
   private GamepadInput gamepad_input;
+  private InputRecorder recorder;
+  private PerformanceOverlay overlay;
 
   private static final double TARGET_FPS_INTERVAL = 1000 / 60;
   private double last_frame_time = -1;
@@ -30,8 +38,8 @@ public class WebMain implements AnimationFrameCallback {
   }
 
   private void startLoop() {
-    SoundManager.INSTANCE.setGramophone(new WebGramophone());
-    GameLoop.INSTANCE.lock();
+    session.getSoundManager().setGramophone(new WebGramophone());
+    session.getLoop().lock();
     Window.requestAnimationFrame(this);
   }
   
@@ -57,7 +65,7 @@ public class WebMain implements AnimationFrameCallback {
   	    last_input_state = gamepad_input.getDirection();
   	  }
 
-  	  GameLoop.INSTANCE.step(last_input_state, web_canvas);
+  	  session.getLoop().step(last_input_state, web_canvas);
 
   	  // Clear for next frame
   	  last_input_state = JoystickState.NEUTRAL;
@@ -91,6 +99,9 @@ public class WebMain implements AnimationFrameCallback {
   		    case "d":
   		      last_input_state = JoystickState.RIGHT;
   		      break;
+  		    case "F3":
+  		      overlay.toggle();
+  		      break;
   		    default:
   		      last_input_state = JoystickState.NEUTRAL;
   		  }
@@ -137,13 +148,41 @@ public class WebMain implements AnimationFrameCallback {
   		}
     });
 
-    Bootstrap.bootstrap(canvas.getWidth(), canvas.getHeight());
+    session = Bootstrap.bootstrap(canvas.getWidth(), canvas.getHeight());
+
+    // Record every game, and print the recording to the console when it's over
+    recorder = new InputRecorder(session.getLoop().getSeed());
+    session.getLoop().setInputRecorder(recorder);
+    session.getState().addStateListener(new StateListener() {
+      @Override
+      public void stateChanged(States state) {
+        if (state == States.GAME_OVER) {
+          printRecording();
+        }
+      }
+    });
 
     // Show start-screen first
-    LaunchScreen launch_screen = new LaunchScreen();
-    GameLoop.INSTANCE.addRenderEvent(launch_screen, -1);
-    GameLoop.INSTANCE.addInputEvent(launch_screen);
-    GameLoop.INSTANCE.pause();
+    LaunchScreen launch_screen = new LaunchScreen(session.getLoop());
+    session.getLoop().addRenderEvent(launch_screen, -1);
+    session.getLoop().addInputEvent(launch_screen);
+    session.getLoop().pause();
+
+    // Shown and hidden with F3, the browser can't count allocations
+    overlay = new PerformanceOverlay(session.getLoop(), canvas.getWidth() - PerformanceOverlay.WIDTH, 0, null);
+    session.getLoop().addRenderEvent(overlay, PerformanceOverlay.Z_INDEX);
+  }
+
+  private void printRecording() {
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream();
+      recorder.writeTo(out);
+      System.out.println("Recorded " + recorder.getFrameCount() + " frames: "
+          + Base64.getEncoder().encodeToString(out.toByteArray()));
+    } catch (IOException e) {
+      // Can't happen when writing to memory
+      throw new IllegalStateException(e);
+    }
   }
 
   public static void main(String[] args) {